@@ -0,0 +1,286 @@
+package xyz.berial.textinputlayout;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.os.Looper;
+import android.support.v4.view.ViewCompat;
+import android.support.v7.widget.AppCompatEditText;
+import android.test.AndroidTestCase;
+import android.text.Editable;
+import android.text.InputFilter;
+import android.view.ContextThemeWrapper;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.EditText;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+/**
+ * Tests {@link TextInputLayout} without attaching it to a window, so that text changes are
+ * handled straight away rather than on the next animation frame.
+ */
+public class TextInputLayoutTest extends AndroidTestCase {
+
+    private static final int MAX_LENGTH = 10;
+
+    private TextInputLayout mLayout;
+    private EditText mEditText;
+    private int mErrorColor;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        if (Looper.myLooper() == null) {
+            // Animators can only be started on a looper thread. This one never loops, so they
+            // start but never run, which leaves each change's end state to test.
+            Looper.prepare();
+        }
+        final ContextThemeWrapper context =
+                new ContextThemeWrapper(getContext(), R.style.Theme_AppCompat_Light);
+        mLayout = new TextInputLayout(context);
+        mLayout.setHintAnimationEnabled(false);
+        mEditText = new AppCompatEditText(context);
+        mLayout.addView(mEditText);
+        mErrorColor = context.getResources().getColor(R.color.design_textinput_error_color);
+    }
+
+    public void testPasteOverLimitOverflows() {
+        mLayout.setCounterEnabled(true);
+        mLayout.setCounterMaxLength(MAX_LENGTH);
+
+        mEditText.getText().append(repeat('a', 50));
+        assertCounter(50, true);
+    }
+
+    public void testDeletingSelectionBelowLimitStopsOverflowing() {
+        mLayout.setCounterEnabled(true);
+        mLayout.setCounterMaxLength(MAX_LENGTH);
+        mEditText.getText().append(repeat('a', 50));
+
+        // A single edit from well over the limit to well under it
+        mEditText.getText().delete(2, 50);
+        assertCounter(2, false);
+    }
+
+    public void testLargeEditsAcrossLimitInBothDirections() {
+        mLayout.setCounterEnabled(true);
+        mLayout.setCounterMaxLength(MAX_LENGTH);
+        final Editable text = mEditText.getText();
+
+        text.append("abc");
+        assertCounter(3, false);
+        text.insert(1, repeat('b', 100));
+        assertCounter(103, true);
+        // Replace most of the text, staying over the limit
+        text.replace(0, 100, repeat('c', 20));
+        assertCounter(23, true);
+        text.clear();
+        assertCounter(0, false);
+        text.append(repeat('d', MAX_LENGTH));
+        assertCounter(MAX_LENGTH, false);
+        text.append("d");
+        assertCounter(MAX_LENGTH + 1, true);
+    }
+
+    public void testSetTextOverLimitOverflows() {
+        mLayout.setCounterEnabled(true);
+        mLayout.setCounterMaxLength(MAX_LENGTH);
+
+        mEditText.setText(repeat('a', 30));
+        assertCounter(30, true);
+        mEditText.setText("");
+        assertCounter(0, false);
+    }
+
+    public void testEnforcedMaxLengthFiltersAfterAppFilters() {
+        final InputFilter allCaps = new InputFilter.AllCaps();
+        mEditText.setFilters(new InputFilter[] {allCaps});
+        mLayout.setCounterEnabled(true);
+        mLayout.setCounterMaxLength(MAX_LENGTH);
+        mLayout.setCounterMaxLengthEnforced(true);
+
+        final InputFilter[] filters = mEditText.getFilters();
+        assertEquals(2, filters.length);
+        assertSame(allCaps, filters[0]);
+
+        // The app's filter still applies, and what it returns is truncated
+        mEditText.getText().append(repeat('a', 50));
+        assertEquals(repeat('A', MAX_LENGTH), mEditText.getText().toString());
+        assertCounter(MAX_LENGTH, false);
+
+        // Replacing a selection only keeps what fits in its place
+        mEditText.getText().replace(2, 4, "bcd");
+        assertEquals("AABC" + repeat('A', MAX_LENGTH - 4), mEditText.getText().toString());
+
+        // Only our filter is removed again
+        mLayout.setCounterMaxLengthEnforced(false);
+        assertEquals(1, mEditText.getFilters().length);
+        assertSame(allCaps, mEditText.getFilters()[0]);
+    }
+
+    public void testErrorTintTakesPrecedenceOverOverflowTint() {
+        // Give the error a different color from the overflow, so that their tints differ
+        mLayout.setErrorEnabled(true);
+        mLayout.setErrorTextAppearance(R.style.TextAppearance_AppCompat_Caption);
+        mLayout.setCounterEnabled(true);
+        mLayout.setCounterMaxLength(MAX_LENGTH);
+
+        mLayout.setError("Error");
+        final int errorTint = getTintColor();
+        assertTrue(errorTint != mErrorColor);
+
+        // Going over the limit keeps the error's tint
+        mEditText.getText().append(repeat('a', 50));
+        assertEquals(errorTint, getTintColor());
+
+        // Clearing the error hands over to the overflow's tint, and back
+        mLayout.setError(null);
+        assertEquals(mErrorColor, getTintColor());
+        mLayout.setError("Error");
+        assertEquals(errorTint, getTintColor());
+
+        // Going back under the limit keeps the error's tint
+        mEditText.getText().clear();
+        assertEquals(errorTint, getTintColor());
+
+        // Disabling the error hands over to the overflow's tint
+        mEditText.getText().append(repeat('a', 50));
+        mLayout.setErrorEnabled(false);
+        assertEquals(mErrorColor, getTintColor());
+    }
+
+    private int getTintColor() {
+        final ColorStateList tint = ViewCompat.getBackgroundTintList(mEditText);
+        assertNotNull("EditText isn't tinted", tint);
+        return tint.getDefaultColor();
+    }
+
+    public void testCounterUpdatesDoNotRequestLayout() {
+        final LayoutCountingFrameLayout root = new LayoutCountingFrameLayout(getContext());
+        root.addView(mLayout);
+        mLayout.setCounterEnabled(true);
+        mLayout.setCounterMaxLength(100);
+        layout(root);
+
+        final int requests = root.mLayoutRequests;
+        for (int i = 0; i < 50; i++) {
+            mEditText.getText().append("a");
+            layout(root);
+        }
+        assertEquals(requests, root.mLayoutRequests);
+        assertEquals(mLayout.getResources().getString(R.string.counterMaxLength, 50, 100),
+                findCounterView(mLayout).getText().toString());
+    }
+
+    public void testCounterMaxLengthWithMoreDigitsRequestsLayout() {
+        final LayoutCountingFrameLayout root = new LayoutCountingFrameLayout(getContext());
+        root.addView(mLayout);
+        mLayout.setCounterEnabled(true);
+        mLayout.setCounterMaxLength(100);
+        layout(root);
+
+        // The counter needs to grow to fit the longer maximum length
+        final int requests = root.mLayoutRequests;
+        mLayout.setCounterMaxLength(100000);
+        assertTrue(root.mLayoutRequests > requests);
+    }
+
+    public void testNoExtraViewsWithoutErrorOrCounter() {
+        assertEquals(1, mLayout.getChildCount());
+        assertSame(mEditText, mLayout.getChildAt(0));
+    }
+
+    public void testCounterAddsBottomBarAndCounterView() {
+        mLayout.setCounterEnabled(true);
+        // The EditText, the bottom bar and the counter
+        assertEquals(3, countViews(mLayout) - 1);
+    }
+
+    public void testNoExtraViewsWithInlineIndicators() {
+        mLayout.setInlineIndicatorsEnabled(true);
+        mLayout.setErrorEnabled(true);
+        mLayout.setCounterEnabled(true);
+        assertEquals(1, mLayout.getChildCount());
+        assertSame(mEditText, mLayout.getChildAt(0));
+    }
+
+    /**
+     * Returns the number of views in the hierarchy under {@code view}, including itself.
+     */
+    private static int countViews(View view) {
+        int count = 1;
+        if (view instanceof ViewGroup) {
+            final ViewGroup group = (ViewGroup) view;
+            for (int i = 0; i < group.getChildCount(); i++) {
+                count += countViews(group.getChildAt(i));
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Measures and lays out {@code root}, which clears every pending layout request below it so
+     * that the next request reaches it again.
+     */
+    private static void layout(View root) {
+        root.measure(View.MeasureSpec.makeMeasureSpec(480, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(800, View.MeasureSpec.AT_MOST));
+        root.layout(0, 0, root.getMeasuredWidth(), root.getMeasuredHeight());
+    }
+
+    private void assertCounter(int length, boolean overflowed) {
+        final TextView counter = findCounterView(mLayout);
+        assertNotNull("No counter view", counter);
+        assertEquals(mLayout.getResources().getString(R.string.counterMaxLength, length,
+                MAX_LENGTH), counter.getText().toString());
+        assertEquals(overflowed, counter.getCurrentTextColor() == mErrorColor);
+
+        final ColorStateList tint = ViewCompat.getBackgroundTintList(mEditText);
+        assertEquals(overflowed, tint != null && tint.getDefaultColor() == mErrorColor);
+    }
+
+    /**
+     * Returns the counter, the only {@link TextView} in the layout other than the EditText
+     * while the error is disabled.
+     */
+    private static TextView findCounterView(View view) {
+        if (view instanceof TextView && !(view instanceof EditText)) {
+            return (TextView) view;
+        }
+        if (view instanceof ViewGroup) {
+            final ViewGroup group = (ViewGroup) view;
+            for (int i = 0; i < group.getChildCount(); i++) {
+                final TextView counter = findCounterView(group.getChildAt(i));
+                if (counter != null) {
+                    return counter;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Counts the layout requests which reach it from its descendants.
+     */
+    private static class LayoutCountingFrameLayout extends FrameLayout {
+        int mLayoutRequests;
+
+        LayoutCountingFrameLayout(Context context) {
+            super(context);
+        }
+
+        @Override
+        public void requestLayout() {
+            super.requestLayout();
+            mLayoutRequests++;
+        }
+    }
+
+    private static String repeat(char c, int count) {
+        final char[] chars = new char[count];
+        for (int i = 0; i < count; i++) {
+            chars[i] = c;
+        }
+        return new String(chars);
+    }
+}
@@ -17,6 +17,8 @@
 package xyz.berial.textinputlayout;
 
 import android.support.v4.view.animation.FastOutSlowInInterpolator;
+import android.view.animation.AccelerateDecelerateInterpolator;
+import android.view.animation.AccelerateInterpolator;
 import android.view.animation.Animation;
 import android.view.animation.DecelerateInterpolator;
 import android.view.animation.Interpolator;
@@ -25,8 +27,29 @@ import android.view.animation.LinearInterpolator;
 class AnimationUtils {
 
     static final Interpolator LINEAR_INTERPOLATOR = new LinearInterpolator();
-    static final Interpolator FAST_OUT_SLOW_IN_INTERPOLATOR = new FastOutSlowInInterpolator();
-    static final Interpolator DECELERATE_INTERPOLATOR = new DecelerateInterpolator();
+    static final Interpolator FAST_OUT_SLOW_IN_INTERPOLATOR =
+            createLookupTableInterpolator(new FastOutSlowInInterpolator());
+    static final Interpolator DECELERATE_INTERPOLATOR =
+            createLookupTableInterpolator(new DecelerateInterpolator());
+    static final Interpolator ACCELERATE_INTERPOLATOR =
+            createLookupTableInterpolator(new AccelerateInterpolator());
+    static final Interpolator ACCELERATE_DECELERATE_INTERPOLATOR =
+            createLookupTableInterpolator(new AccelerateDecelerateInterpolator());
+
+    /**
+     * The maximum difference between a lookup table interpolator and the interpolator it was
+     * created from, for the library's own curves, across inputs in {@code [0, 1]}.
+     */
+    static final float LOOKUP_TABLE_MAX_ERROR = 0.001f;
+
+    /**
+     * Returns an interpolator which samples {@code interpolator} once into a fixed-size table,
+     * and then linearly interpolates between the two closest samples. Inputs outside of
+     * {@code [0, 1]} are clamped to that range.
+     */
+    static Interpolator createLookupTableInterpolator(Interpolator interpolator) {
+        return new LookupTableInterpolator(interpolator);
+    }
 
     /**
      * Linear interpolation between {@code startValue} and {@code endValue} by {@code fraction}.
@@ -39,6 +62,37 @@ class AnimationUtils {
         return startValue + Math.round(fraction * (endValue - startValue));
     }
 
+    /**
+     * An interpolator backed by a table of samples from another interpolator, so that each
+     * evaluation is an array lookup and a linear interpolation.
+     */
+    static class LookupTableInterpolator implements Interpolator {
+
+        private static final int STEPS = 256;
+
+        private final float[] mValues = new float[STEPS + 1];
+
+        LookupTableInterpolator(Interpolator interpolator) {
+            for (int i = 0; i <= STEPS; i++) {
+                mValues[i] = interpolator.getInterpolation(i / (float) STEPS);
+            }
+        }
+
+        @Override
+        public float getInterpolation(float input) {
+            if (input <= 0f) {
+                return mValues[0];
+            } else if (input >= 1f) {
+                return mValues[STEPS];
+            }
+
+            final float position = input * STEPS;
+            final int index = Math.min((int) position, STEPS - 1);
+            final float offset = position - index;
+            return mValues[index] + offset * (mValues[index + 1] - mValues[index]);
+        }
+    }
+
     static class AnimationListenerAdapter implements Animation.AnimationListener {
         @Override
         public void onAnimationStart(Animation animation) {
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.berial.textinputlayout;
+
+import android.support.annotation.Nullable;
+
+/**
+ * An {@link TextInputLayout.IncrementalValidator} for rules about individual chars, such as
+ * digits only or forbidden characters. It keeps a count of the chars which break the rule, so
+ * each edit only looks at the chars it removes and inserts.
+ * <p>
+ * For example, a digits only rule:
+ * <pre>
+ * layout.addIncrementalValidator(new CharacterRuleValidator("Only digits are allowed") {
+ *     protected boolean isAllowed(char c) {
+ *         return c >= '0' &amp;&amp; c <= '9';
+ *     }
+ * });
+ * </pre>
+ */
+public abstract class CharacterRuleValidator implements TextInputLayout.IncrementalValidator {
+
+    private final CharSequence mError;
+
+    private int mDisallowedCount;
+    private boolean mEditPending;
+
+    /**
+     * @param error the error to show while the text has any char which isn't allowed
+     */
+    public CharacterRuleValidator(CharSequence error) {
+        mError = error;
+    }
+
+    /**
+     * Returns whether {@code c} is allowed in the text.
+     */
+    protected abstract boolean isAllowed(char c);
+
+    @Override
+    public void reset(CharSequence text) {
+        mDisallowedCount = text != null ? countDisallowed(text, 0, text.length()) : 0;
+        mEditPending = false;
+    }
+
+    @Override
+    public void beforeTextChanged(CharSequence text, int start, int count, int after) {
+        mDisallowedCount -= countDisallowed(text, start, start + count);
+        mEditPending = true;
+    }
+
+    @Override
+    public void onTextChanged(CharSequence text, int start, int before, int count) {
+        if (!mEditPending) {
+            // We didn't see what was removed, so count it all
+            reset(text);
+            return;
+        }
+        mEditPending = false;
+        mDisallowedCount += countDisallowed(text, start, start + count);
+    }
+
+    @Nullable
+    @Override
+    public CharSequence getError() {
+        return mDisallowedCount > 0 ? mError : null;
+    }
+
+    private int countDisallowed(CharSequence text, int start, int end) {
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            if (!isAllowed(text.charAt(i))) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -16,18 +16,19 @@
 
 package xyz.berial.textinputlayout;
 
-import android.content.res.TypedArray;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.Picture;
 import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.Typeface;
 import android.os.Build;
-import android.support.v4.text.TextDirectionHeuristicsCompat;
 import android.support.v4.view.GravityCompat;
 import android.support.v4.view.ViewCompat;
+import android.text.Layout;
+import android.text.StaticLayout;
 import android.text.TextPaint;
 import android.text.TextUtils;
 import android.view.Gravity;
@@ -40,6 +41,10 @@ final class CollapsingTextHelper {
     // by using our own texture
     private static final boolean USE_SCALING_TEXTURE = Build.VERSION.SDK_INT < 18;
 
+    // Number of steps sampled into the frame table, the table holds one more entry so that
+    // both the expanded and the collapsed states are stored exactly
+    private static final int FRAME_TABLE_STEPS = 32;
+
     private static final boolean DEBUG_DRAW = false;
     private static final Paint DEBUG_DRAW_PAINT;
     static {
@@ -58,6 +63,9 @@ final class CollapsingTextHelper {
     private final Rect mExpandedBounds;
     private final Rect mCollapsedBounds;
     private final RectF mCurrentBounds;
+    private final Rect mDrawnTextBounds = new Rect();
+    private final Rect mDirtyRect = new Rect();
+    private final Rect mTmpRect = new Rect();
     private int mExpandedTextGravity = Gravity.CENTER_VERTICAL;
     private int mCollapsedTextGravity = Gravity.CENTER_VERTICAL;
     private float mExpandedTextSize = 15;
@@ -81,17 +89,54 @@ final class CollapsingTextHelper {
     private Paint mTexturePaint;
     private float mTextureAscent;
     private float mTextureDescent;
+    private CharSequence mTextureText;
+    private float mTextureTextSize;
+    private Typeface mTextureTypeface;
+
+    private int mExpandedMaxLines = 1;
+    private StaticLayout mExpandedLayout;
+    private TextPaint mLayoutPaint;
+    private CharSequence mExpandedLayoutText;
+    private int mExpandedLayoutWidth;
+    private float mExpandedLayoutTextSize;
+    private Typeface mExpandedLayoutTypeface;
+    private Layout.Alignment mExpandedLayoutAlignment;
+    private int mExpandedLayoutMaxLines;
+
+    private boolean mUseDisplayList;
+    private Picture mTextPicture;
+    private CharSequence mPictureText;
+    private float mPictureTextSize;
+    private int mPictureTextColor;
+    private Typeface mPictureTypeface;
+    private float mPictureAscent;
+    // The text color of the last frame we drew, to tell whether the color is animating
+    private int mLastDrawnTextColor;
 
     private float mScale;
     private float mCurrentTextSize;
 
     private boolean mBoundsChanged;
 
+    private boolean mQuantizedStateValid;
+    private int mQuantizedX;
+    private int mQuantizedY;
+    private int mQuantizedTextSize;
+    private float mTextSizeQuantum = 1f;
+    private int mSkippedFrameCount;
+    private boolean mRecalculatePending;
+
     private final TextPaint mTextPaint;
 
     private Interpolator mPositionInterpolator;
     private Interpolator mTextSizeInterpolator;
 
+    private boolean mUseFrameTable;
+    private boolean mFrameTableValid;
+    private float[] mFrameTableX;
+    private float[] mFrameTableY;
+    private float[] mFrameTableTextSize;
+
     public CollapsingTextHelper(View view) {
         mView = view;
 
@@ -105,39 +150,57 @@ final class CollapsingTextHelper {
 
     void setTextSizeInterpolator(Interpolator interpolator) {
         mTextSizeInterpolator = interpolator;
-        recalculate();
+        mFrameTableValid = false;
+        requestRecalculate();
     }
 
     void setPositionInterpolator(Interpolator interpolator) {
         mPositionInterpolator = interpolator;
-        recalculate();
+        mFrameTableValid = false;
+        requestRecalculate();
     }
 
     void setExpandedTextSize(float textSize) {
         if (mExpandedTextSize != textSize) {
             mExpandedTextSize = textSize;
-            recalculate();
+            mFrameTableValid = false;
+            requestRecalculate();
         }
     }
 
     void setCollapsedTextSize(float textSize) {
         if (mCollapsedTextSize != textSize) {
             mCollapsedTextSize = textSize;
-            recalculate();
+            mFrameTableValid = false;
+            requestRecalculate();
         }
     }
 
     void setCollapsedTextColor(int textColor) {
         if (mCollapsedTextColor != textColor) {
             mCollapsedTextColor = textColor;
-            recalculate();
+            onTextColorChanged();
         }
     }
 
     void setExpandedTextColor(int textColor) {
         if (mExpandedTextColor != textColor) {
             mExpandedTextColor = textColor;
-            recalculate();
+            onTextColorChanged();
+        }
+    }
+
+    /**
+     * Updates the current text color, which is blended from the raw fraction on each frame
+     * rather than sampled into the frame table, so that color changes such as those on every
+     * focus change don't rebuild the table or recalculate the offsets.
+     */
+    private void onTextColorChanged() {
+        if (mRecalculatePending || !hasSize()) {
+            // The pending recalculation will pick up the new color
+            requestRecalculate();
+        } else {
+            calculateCurrentOffsets();
         }
     }
 
@@ -146,6 +209,7 @@ final class CollapsingTextHelper {
             mExpandedBounds.set(left, top, right, bottom);
             mBoundsChanged = true;
             onBoundsChanged();
+            requestRecalculate();
         }
     }
 
@@ -154,10 +218,12 @@ final class CollapsingTextHelper {
             mCollapsedBounds.set(left, top, right, bottom);
             mBoundsChanged = true;
             onBoundsChanged();
+            requestRecalculate();
         }
     }
 
     void onBoundsChanged() {
+        mFrameTableValid = false;
         mDrawTitle = mCollapsedBounds.width() > 0 && mCollapsedBounds.height() > 0
                 && mExpandedBounds.width() > 0 && mExpandedBounds.height() > 0;
     }
@@ -165,7 +231,7 @@ final class CollapsingTextHelper {
     void setExpandedTextGravity(int gravity) {
         if (mExpandedTextGravity != gravity) {
             mExpandedTextGravity = gravity;
-            recalculate();
+            requestRecalculate();
         }
     }
 
@@ -176,7 +242,7 @@ final class CollapsingTextHelper {
     void setCollapsedTextGravity(int gravity) {
         if (mCollapsedTextGravity != gravity) {
             mCollapsedTextGravity = gravity;
-            recalculate();
+            requestRecalculate();
         }
     }
 
@@ -185,33 +251,31 @@ final class CollapsingTextHelper {
     }
 
     void setCollapsedTextAppearance(int resId) {
-        TypedArray a = mView.getContext().obtainStyledAttributes(resId, R.styleable.TextAppearance);
-        if (a.hasValue(R.styleable.TextAppearance_android_textColor)) {
-            mCollapsedTextColor = a.getColor(
-                    R.styleable.TextAppearance_android_textColor, mCollapsedTextColor);
+        final ResolvedTextAppearance appearance =
+                ResolvedTextAppearance.get(mView.getContext(), resId);
+        if (appearance.getTextColor() != null) {
+            mCollapsedTextColor = appearance.getTextColor().getDefaultColor();
         }
-        if (a.hasValue(R.styleable.TextAppearance_android_textSize)) {
-            mCollapsedTextSize = a.getDimensionPixelSize(
-                    R.styleable.TextAppearance_android_textSize, (int) mCollapsedTextSize);
+        if (appearance.getTextSize() >= 0 && appearance.getTextSize() != mCollapsedTextSize) {
+            mCollapsedTextSize = appearance.getTextSize();
+            mFrameTableValid = false;
         }
-        a.recycle();
 
-        recalculate();
+        requestRecalculate();
     }
 
     void setExpandedTextAppearance(int resId) {
-        TypedArray a = mView.getContext().obtainStyledAttributes(resId, R.styleable.TextAppearance);
-        if (a.hasValue(R.styleable.TextAppearance_android_textColor)) {
-            mExpandedTextColor = a.getColor(
-                    R.styleable.TextAppearance_android_textColor, mExpandedTextColor);
+        final ResolvedTextAppearance appearance =
+                ResolvedTextAppearance.get(mView.getContext(), resId);
+        if (appearance.getTextColor() != null) {
+            mExpandedTextColor = appearance.getTextColor().getDefaultColor();
         }
-        if (a.hasValue(R.styleable.TextAppearance_android_textSize)) {
-            mExpandedTextSize = a.getDimensionPixelSize(
-                    R.styleable.TextAppearance_android_textSize, (int) mExpandedTextSize);
+        if (appearance.getTextSize() >= 0 && appearance.getTextSize() != mExpandedTextSize) {
+            mExpandedTextSize = appearance.getTextSize();
+            mFrameTableValid = false;
         }
-        a.recycle();
 
-        recalculate();
+        requestRecalculate();
     }
 
     void setTypeface(Typeface typeface) {
@@ -220,7 +284,7 @@ final class CollapsingTextHelper {
         }
         if (mTextPaint.getTypeface() != typeface) {
             mTextPaint.setTypeface(typeface);
-            recalculate();
+            requestRecalculate();
         }
     }
 
@@ -240,10 +304,72 @@ final class CollapsingTextHelper {
 
         if (fraction != mExpandedFraction) {
             mExpandedFraction = fraction;
-            calculateCurrentOffsets();
+            if (mRecalculatePending && hasSize()) {
+                // Something changed since the last calculation, so run it now rather than
+                // drawing this fraction with stale offsets
+                recalculate();
+            } else {
+                calculateCurrentOffsets();
+            }
         }
     }
 
+    /**
+     * Set whether the collapse/expand animation should be sampled into a frame table. When
+     * enabled, the draw position and text size are computed once for a fixed number of steps
+     * whenever the bounds, text, sizes or interpolators change, and every frame after that is a
+     * table lookup plus a linear interpolation between the two closest steps. The color is
+     * cheap to blend and changes on every focus change, so it is kept out of the table.
+     */
+    void setUseFrameTable(boolean useFrameTable) {
+        if (mUseFrameTable != useFrameTable) {
+            mUseFrameTable = useFrameTable;
+            mFrameTableValid = false;
+            requestRecalculate();
+        }
+    }
+
+    boolean getUseFrameTable() {
+        return mUseFrameTable;
+    }
+
+    /**
+     * Set the maximum number of lines the expanded text can wrap onto. Text which doesn't fit is
+     * ellipsized at the end of the last line. The collapsed text is always a single line.
+     */
+    void setExpandedMaxLines(int maxLines) {
+        maxLines = Math.max(1, maxLines);
+        if (mExpandedMaxLines != maxLines) {
+            mExpandedMaxLines = maxLines;
+            requestRecalculate();
+        }
+    }
+
+    int getExpandedMaxLines() {
+        return mExpandedMaxLines;
+    }
+
+    /**
+     * Set whether the text should be recorded into a {@link Picture} and replayed on each frame,
+     * rather than drawn as text. The recording is only redone when the text, its size, color or
+     * typeface changes. While the color changes on every frame, such as while it is blended
+     * during the animation, the text is drawn directly instead. This is ignored on hardware
+     * accelerated canvases before API 23, which can't draw pictures.
+     */
+    void setUseDisplayList(boolean useDisplayList) {
+        if (mUseDisplayList != useDisplayList) {
+            mUseDisplayList = useDisplayList;
+            if (!useDisplayList) {
+                clearTextPicture();
+            }
+            ViewCompat.postInvalidateOnAnimation(mView);
+        }
+    }
+
+    boolean getUseDisplayList() {
+        return mUseDisplayList;
+    }
+
     float getExpansionFraction() {
         return mExpandedFraction;
     }
@@ -258,32 +384,175 @@ final class CollapsingTextHelper {
 
     private void calculateCurrentOffsets() {
         final float fraction = mExpandedFraction;
+        final float drawX;
+        final float drawY;
+        final float textSize;
+
+        if (mUseFrameTable) {
+            ensureFrameTable();
 
-        interpolateBounds(fraction);
-        mCurrentDrawX = lerp(mExpandedDrawX, mCollapsedDrawX, fraction,
-                mPositionInterpolator);
-        mCurrentDrawY = lerp(mExpandedDrawY, mCollapsedDrawY, fraction,
-                mPositionInterpolator);
+            // Find the two closest steps and interpolate linearly between them
+            final float position = fraction * FRAME_TABLE_STEPS;
+            final int index = Math.min((int) position, FRAME_TABLE_STEPS - 1);
+            final float offset = position - index;
 
-        setInterpolatedTextSize(lerp(mExpandedTextSize, mCollapsedTextSize,
-                fraction, mTextSizeInterpolator));
+            drawX = AnimationUtils.lerp(mFrameTableX[index], mFrameTableX[index + 1], offset);
+            drawY = AnimationUtils.lerp(mFrameTableY[index], mFrameTableY[index + 1], offset);
+            textSize = AnimationUtils.lerp(mFrameTableTextSize[index],
+                    mFrameTableTextSize[index + 1], offset);
 
+            if (DEBUG_DRAW) {
+                // The current bounds are only needed for the debug rect
+                interpolateBounds(fraction);
+            }
+        } else {
+            interpolateBounds(fraction);
+            drawX = lerp(mExpandedDrawX, mCollapsedDrawX, fraction, mPositionInterpolator);
+            drawY = lerp(mExpandedDrawY, mCollapsedDrawY, fraction, mPositionInterpolator);
+            textSize = lerp(mExpandedTextSize, mCollapsedTextSize,
+                    fraction, mTextSizeInterpolator);
+        }
+        final int textColor = calculateTextColor(fraction);
+
+        // Quantize the draw state to what can actually change a pixel: the position to whole
+        // pixels, and the text size so that a step changes the width of the text by a pixel
+        final int quantizedX = Math.round(drawX);
+        final int quantizedY = Math.round(drawY);
+        final int quantizedTextSize = Math.round(textSize * mTextSizeQuantum);
+
+        if (mQuantizedStateValid && fraction != 0f && fraction != 1f
+                && quantizedX == mQuantizedX && quantizedY == mQuantizedY
+                && quantizedTextSize == mQuantizedTextSize && textColor == mTextPaint.getColor()) {
+            // Nothing visible would change, so skip this frame. We never skip the end states so
+            // that we always settle on the exact offsets.
+            mSkippedFrameCount++;
+            return;
+        }
+
+        mQuantizedX = quantizedX;
+        mQuantizedY = quantizedY;
+        mQuantizedTextSize = quantizedTextSize;
+        mQuantizedStateValid = true;
+
+        mCurrentDrawX = drawX;
+        mCurrentDrawY = drawY;
+        setInterpolatedTextSize(textSize);
+        mTextPaint.setColor(textColor);
+
+        invalidateDrawnText();
+    }
+
+    /**
+     * Returns the number of frames which were skipped because they wouldn't have produced a
+     * visible change.
+     */
+    int getSkippedFrameCount() {
+        return mSkippedFrameCount;
+    }
+
+    /**
+     * Invalidates the union of the area the text was drawn in for the previous frame, and the
+     * area it will be drawn in for the current one, rather than the whole view.
+     */
+    private void invalidateDrawnText() {
+        final Rect current = mTmpRect;
+        calculateDrawnTextBounds(current);
+
+        final Rect dirty = mDirtyRect;
+        dirty.set(mDrawnTextBounds);
+        dirty.union(current);
+        mDrawnTextBounds.set(current);
+
+        if (!dirty.isEmpty()) {
+            ViewCompat.postInvalidateOnAnimation(mView,
+                    dirty.left, dirty.top, dirty.right, dirty.bottom);
+        }
+    }
+
+    private void calculateDrawnTextBounds(Rect out) {
+        if (mTextToDraw == null || !mDrawTitle) {
+            out.setEmpty();
+            return;
+        }
+
+        final Typeface typeface = mTextPaint.getTypeface();
+        final float fontDescent = TextMetricsCache.descent(typeface, mCurrentTextSize) * mScale;
+        final float width;
+        final float ascent;
+        final float descent;
+        if (shouldDrawExpandedLayout()) {
+            final int firstBaseline = mExpandedLayout.getLineBaseline(0);
+            width = mExpandedLayout.getWidth() * mScale;
+            ascent = -firstBaseline * mScale;
+            descent = (mExpandedLayout.getLineBottom(getExpandedLayoutLineCount() - 1)
+                    - firstBaseline) * mScale;
+        } else {
+            width = TextMetricsCache.measureText(mTextToDraw, typeface, mCurrentTextSize)
+                    * mScale;
+            ascent = TextMetricsCache.ascent(typeface, mCurrentTextSize) * mScale;
+            descent = fontDescent;
+        }
+
+        // Pad the measured bounds, as glyphs can overhang their advance width and
+        // anti-aliasing can bleed into the neighbouring pixels
+        final int padding = (int) Math.ceil(fontDescent) + 1;
+
+        out.set((int) Math.floor(mCurrentDrawX) - padding,
+                (int) Math.floor(mCurrentDrawY + ascent) - padding,
+                (int) Math.ceil(mCurrentDrawX + width) + padding,
+                (int) Math.ceil(mCurrentDrawY + descent) + padding);
+    }
+
+    private int calculateTextColor(float fraction) {
         if (mCollapsedTextColor != mExpandedTextColor) {
             // If the collapsed and expanded text colors are different, blend them based on the
             // fraction
-            mTextPaint.setColor(blendColors(mExpandedTextColor, mCollapsedTextColor, fraction));
+            return blendColors(mExpandedTextColor, mCollapsedTextColor, fraction);
         } else {
-            mTextPaint.setColor(mCollapsedTextColor);
+            return mCollapsedTextColor;
+        }
+    }
+
+    /**
+     * Samples the draw position and text size for every step of the animation. This is only done
+     * when the table has been invalidated by a change to the bounds, text, sizes or
+     * interpolators.
+     */
+    private void ensureFrameTable() {
+        if (mFrameTableValid) {
+            return;
         }
 
-        ViewCompat.postInvalidateOnAnimation(mView);
+        if (mFrameTableX == null) {
+            mFrameTableX = new float[FRAME_TABLE_STEPS + 1];
+            mFrameTableY = new float[FRAME_TABLE_STEPS + 1];
+            mFrameTableTextSize = new float[FRAME_TABLE_STEPS + 1];
+        }
+
+        for (int i = 0; i <= FRAME_TABLE_STEPS; i++) {
+            final float fraction = i / (float) FRAME_TABLE_STEPS;
+            mFrameTableX[i] = lerp(mExpandedDrawX, mCollapsedDrawX, fraction,
+                    mPositionInterpolator);
+            mFrameTableY[i] = lerp(mExpandedDrawY, mCollapsedDrawY, fraction,
+                    mPositionInterpolator);
+            mFrameTableTextSize[i] = lerp(mExpandedTextSize, mCollapsedTextSize, fraction,
+                    mTextSizeInterpolator);
+        }
+
+        mFrameTableValid = true;
     }
 
     private void calculateBaseOffsets() {
+        final Typeface typeface = mTextPaint.getTypeface();
+        final float oldCollapsedDrawX = mCollapsedDrawX;
+        final float oldCollapsedDrawY = mCollapsedDrawY;
+        final float oldExpandedDrawX = mExpandedDrawX;
+        final float oldExpandedDrawY = mExpandedDrawY;
+
         // We then calculate the collapsed text size, using the same logic
-        mTextPaint.setTextSize(mCollapsedTextSize);
-        float width = mTextToDraw != null ?
-                mTextPaint.measureText(mTextToDraw, 0, mTextToDraw.length()) : 0;
+        float width = TextMetricsCache.measureText(mTextToDraw, typeface, mCollapsedTextSize);
+        float ascent = TextMetricsCache.ascent(typeface, mCollapsedTextSize);
+        float descent = TextMetricsCache.descent(typeface, mCollapsedTextSize);
         final int collapsedAbsGravity = GravityCompat.getAbsoluteGravity(mCollapsedTextGravity,
                 mIsRtl ? ViewCompat.LAYOUT_DIRECTION_RTL : ViewCompat.LAYOUT_DIRECTION_LTR);
         switch (collapsedAbsGravity & Gravity.VERTICAL_GRAVITY_MASK) {
@@ -291,12 +560,12 @@ final class CollapsingTextHelper {
                 mCollapsedDrawY = mCollapsedBounds.bottom;
                 break;
             case Gravity.TOP:
-                mCollapsedDrawY = mCollapsedBounds.top - mTextPaint.ascent();
+                mCollapsedDrawY = mCollapsedBounds.top - ascent;
                 break;
             case Gravity.CENTER_VERTICAL:
             default:
-                float textHeight = mTextPaint.descent() - mTextPaint.ascent();
-                float textOffset = (textHeight / 2) - mTextPaint.descent();
+                float textHeight = descent - ascent;
+                float textOffset = (textHeight / 2) - descent;
                 mCollapsedDrawY = mCollapsedBounds.centerY() + textOffset;
                 break;
         }
@@ -313,9 +582,12 @@ final class CollapsingTextHelper {
                 break;
         }
 
-        mTextPaint.setTextSize(mExpandedTextSize);
-        width = mTextToDraw != null
-                ? mTextPaint.measureText(mTextToDraw, 0, mTextToDraw.length()) : 0;
+        width = TextMetricsCache.measureText(mTextToDraw, typeface, mExpandedTextSize);
+        // A change in text size of one quantum changes the expanded text's width by a pixel
+        mTextSizeQuantum = mExpandedTextSize > 0
+                ? Math.max(1f, width / mExpandedTextSize) : 1f;
+        ascent = TextMetricsCache.ascent(typeface, mExpandedTextSize);
+        descent = TextMetricsCache.descent(typeface, mExpandedTextSize);
         final int expandedAbsGravity = GravityCompat.getAbsoluteGravity(mExpandedTextGravity,
                 mIsRtl ? ViewCompat.LAYOUT_DIRECTION_RTL : ViewCompat.LAYOUT_DIRECTION_LTR);
         switch (expandedAbsGravity & Gravity.VERTICAL_GRAVITY_MASK) {
@@ -323,12 +595,12 @@ final class CollapsingTextHelper {
                 mExpandedDrawY = mExpandedBounds.bottom;
                 break;
             case Gravity.TOP:
-                mExpandedDrawY = mExpandedBounds.top - mTextPaint.ascent();
+                mExpandedDrawY = mExpandedBounds.top - ascent;
                 break;
             case Gravity.CENTER_VERTICAL:
             default:
-                float textHeight = mTextPaint.descent() - mTextPaint.ascent();
-                float textOffset = (textHeight / 2) - mTextPaint.descent();
+                float textHeight = descent - ascent;
+                float textOffset = (textHeight / 2) - descent;
                 mExpandedDrawY = mExpandedBounds.centerY() + textOffset;
                 break;
         }
@@ -345,8 +617,122 @@ final class CollapsingTextHelper {
                 break;
         }
 
-        // The bounds have changed so we need to clear the texture
-        clearTexture();
+        ensureExpandedLayout(typeface, expandedAbsGravity);
+        if (mExpandedLayout != null) {
+            // The expanded text wraps, so position the whole block of lines rather than a
+            // single line. The layout is as wide as the bounds and aligns each line within
+            // them, so it's always drawn from the left.
+            final int lineCount = getExpandedLayoutLineCount();
+            final int firstBaseline = mExpandedLayout.getLineBaseline(0);
+            final int lastBaseline = mExpandedLayout.getLineBaseline(lineCount - 1);
+            final int blockHeight = mExpandedLayout.getLineBottom(lineCount - 1);
+
+            mExpandedDrawX = mExpandedBounds.left;
+            switch (expandedAbsGravity & Gravity.VERTICAL_GRAVITY_MASK) {
+                case Gravity.BOTTOM:
+                    mExpandedDrawY = mExpandedBounds.bottom - (lastBaseline - firstBaseline);
+                    break;
+                case Gravity.TOP:
+                    mExpandedDrawY = mExpandedBounds.top + firstBaseline;
+                    break;
+                case Gravity.CENTER_VERTICAL:
+                default:
+                    mExpandedDrawY = mExpandedBounds.centerY() - (blockHeight / 2f)
+                            + firstBaseline;
+                    break;
+            }
+        }
+
+        // If the offsets have changed, any sampled frames are now stale. Any texture is kept
+        // since ensureExpandedTexture() checks whether it's still valid before using it
+        if (mCollapsedDrawX != oldCollapsedDrawX || mCollapsedDrawY != oldCollapsedDrawY
+                || mExpandedDrawX != oldExpandedDrawX || mExpandedDrawY != oldExpandedDrawY) {
+            mFrameTableValid = false;
+        }
+    }
+
+    /**
+     * Builds the multi-line layout of the expanded text if the text doesn't fit on a single line,
+     * or clears it if it isn't needed. The layout is only rebuilt when the text, available
+     * width, text size, typeface, alignment or maximum number of lines changes, never during the
+     * animation.
+     */
+    private void ensureExpandedLayout(Typeface typeface, int expandedAbsGravity) {
+        final int width = mExpandedBounds.width();
+        if (mExpandedMaxLines <= 1 || width <= 0 || TextUtils.isEmpty(mText)) {
+            mExpandedLayout = null;
+            mExpandedLayoutText = null;
+            return;
+        }
+
+        // Layout alignments are relative to the text's direction, whereas the gravity has
+        // already been resolved to an absolute one
+        final Layout.Alignment alignment;
+        switch (expandedAbsGravity & Gravity.HORIZONTAL_GRAVITY_MASK) {
+            case Gravity.CENTER_HORIZONTAL:
+                alignment = Layout.Alignment.ALIGN_CENTER;
+                break;
+            case Gravity.RIGHT:
+                alignment = mIsRtl
+                        ? Layout.Alignment.ALIGN_NORMAL : Layout.Alignment.ALIGN_OPPOSITE;
+                break;
+            case Gravity.LEFT:
+            default:
+                alignment = mIsRtl
+                        ? Layout.Alignment.ALIGN_OPPOSITE : Layout.Alignment.ALIGN_NORMAL;
+                break;
+        }
+
+        if (mExpandedLayoutText != null && mExpandedLayoutWidth == width
+                && mExpandedLayoutTextSize == mExpandedTextSize
+                && mExpandedLayoutTypeface == typeface
+                && mExpandedLayoutAlignment == alignment
+                && mExpandedLayoutMaxLines == mExpandedMaxLines
+                && TextUtils.equals(mExpandedLayoutText, mText)) {
+            // The layout we have (or the lack of one) is still valid
+            return;
+        }
+
+        if (mLayoutPaint == null) {
+            mLayoutPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+        }
+        mLayoutPaint.setTypeface(typeface);
+        mLayoutPaint.setTextSize(mExpandedTextSize);
+
+        StaticLayout layout = new StaticLayout(mText, mLayoutPaint, width, alignment,
+                1f, 0f, false);
+        if (layout.getLineCount() > mExpandedMaxLines) {
+            // Ellipsize whatever doesn't fit on the last line we're allowed to show
+            final int lastLineStart = layout.getLineStart(mExpandedMaxLines - 1);
+            final CharSequence lastLine = TextUtils.ellipsize(
+                    mText.subSequence(lastLineStart, mText.length()), mLayoutPaint, width,
+                    TextUtils.TruncateAt.END);
+            layout = new StaticLayout(
+                    TextUtils.concat(mText.subSequence(0, lastLineStart), lastLine),
+                    mLayoutPaint, width, alignment, 1f, 0f, false);
+        }
+
+        // If the text fits on one line, the single line path handles it
+        mExpandedLayout = layout.getLineCount() > 1 ? layout : null;
+        mExpandedLayoutText = mText;
+        mExpandedLayoutWidth = width;
+        mExpandedLayoutTextSize = mExpandedTextSize;
+        mExpandedLayoutTypeface = typeface;
+        mExpandedLayoutAlignment = alignment;
+        mExpandedLayoutMaxLines = mExpandedMaxLines;
+    }
+
+    private int getExpandedLayoutLineCount() {
+        return Math.min(mExpandedLayout.getLineCount(), mExpandedMaxLines);
+    }
+
+    /**
+     * Returns true if the current frame should be drawn using the multi-line expanded layout.
+     * The collapsed text, and the scaled texture used on older platforms, always use a single
+     * ellipsized line.
+     */
+    private boolean shouldDrawExpandedLayout() {
+        return mExpandedLayout != null && mCurrentTextSize == mExpandedTextSize && !mUseTexture;
     }
 
     private void interpolateBounds(float fraction) {
@@ -361,26 +747,36 @@ final class CollapsingTextHelper {
     }
 
     public void draw(Canvas canvas) {
+        // Normally done in a pre-draw pass, but make sure we never draw stale offsets
+        recalculateIfNeeded();
+
         final int saveCount = canvas.save();
 
         if (mTextToDraw != null && mDrawTitle) {
             float x = mCurrentDrawX;
             float y = mCurrentDrawY;
 
+            final int textColor = mTextPaint.getColor();
+            final boolean textColorSteady = textColor == mLastDrawnTextColor;
+            mLastDrawnTextColor = textColor;
+
             final boolean drawTexture = mUseTexture && mExpandedTitleTexture != null;
 
             final float ascent;
             final float descent;
 
-            // Update the TextPaint to the current text size
-            mTextPaint.setTextSize(mCurrentTextSize);
+            // Update the TextPaint to the current text size, if something else changed it
+            if (mTextPaint.getTextSize() != mCurrentTextSize) {
+                mTextPaint.setTextSize(mCurrentTextSize);
+            }
 
             if (drawTexture) {
                 ascent = mTextureAscent * mScale;
                 descent = mTextureDescent * mScale;
             } else {
-                ascent = mTextPaint.ascent() * mScale;
-                descent = mTextPaint.descent() * mScale;
+                final Typeface typeface = mTextPaint.getTypeface();
+                ascent = TextMetricsCache.ascent(typeface, mCurrentTextSize) * mScale;
+                descent = TextMetricsCache.descent(typeface, mCurrentTextSize) * mScale;
             }
 
             if (DEBUG_DRAW) {
@@ -397,9 +793,27 @@ final class CollapsingTextHelper {
                 canvas.scale(mScale, mScale, x, y);
             }
 
-            if (drawTexture) {
-                // If we should use a texture, draw it instead of text
+            if (shouldDrawExpandedLayout()) {
+                // Draw the wrapped lines, with the first baseline on our draw position
+                final int lineCount = getExpandedLayoutLineCount();
+                canvas.translate(x, y - mExpandedLayout.getLineBaseline(0));
+                canvas.clipRect(0, 0, mExpandedLayout.getWidth(),
+                        mExpandedLayout.getLineBottom(lineCount - 1));
+                mLayoutPaint.setColor(mTextPaint.getColor());
+                mExpandedLayout.draw(canvas);
+            } else if (drawTexture) {
+                // If we should use a texture, draw it instead of text, tinted with the
+                // current text color
+                mTexturePaint.setColor(mTextPaint.getColor());
                 canvas.drawBitmap(mExpandedTitleTexture, x, y, mTexturePaint);
+            } else if (mUseDisplayList && canDrawPicture(canvas)
+                    && (textColorSteady || isTextPictureColor(textColor))) {
+                // Replay the recorded text under the current transform, rather than laying out
+                // the text again. The picture is recorded in the text color, so this is skipped
+                // while the color changes on every frame, rather than recording it each time.
+                ensureTextPicture();
+                canvas.translate(x, y + mPictureAscent);
+                canvas.drawPicture(mTextPicture);
             } else {
                 canvas.drawText(mTextToDraw, 0, mTextToDraw.length(), x, y, mTextPaint);
             }
@@ -408,12 +822,55 @@ final class CollapsingTextHelper {
         canvas.restoreToCount(saveCount);
     }
 
-    private boolean calculateIsRtl(CharSequence text) {
-        final boolean defaultIsRtl = ViewCompat.getLayoutDirection(mView)
-                == ViewCompat.LAYOUT_DIRECTION_RTL;
-        return (defaultIsRtl
-                ? TextDirectionHeuristicsCompat.FIRSTSTRONG_RTL
-                : TextDirectionHeuristicsCompat.FIRSTSTRONG_LTR).isRtl(text, 0, text.length());
+    /**
+     * Makes sure that {@link #mTextPicture} holds the text to draw, recorded using the current
+     * text size, color and typeface. The recording is reused until one of those changes.
+     */
+    private void ensureTextPicture() {
+        final Typeface typeface = mTextPaint.getTypeface();
+        final int textColor = mTextPaint.getColor();
+
+        if (mTextPicture != null && mPictureTextSize == mCurrentTextSize
+                && mPictureTextColor == textColor && mPictureTypeface == typeface
+                && TextUtils.equals(mPictureText, mTextToDraw)) {
+            return;
+        }
+
+        if (mTextPicture == null) {
+            mTextPicture = new Picture();
+        }
+
+        final float ascent = TextMetricsCache.ascent(typeface, mCurrentTextSize);
+        final float descent = TextMetricsCache.descent(typeface, mCurrentTextSize);
+        final int w = (int) Math.ceil(
+                TextMetricsCache.measureText(mTextToDraw, typeface, mCurrentTextSize));
+        final int h = (int) Math.ceil(descent - ascent);
+
+        // The recording's origin is the top left of the text, rather than its baseline
+        final Canvas c = mTextPicture.beginRecording(Math.max(w, 1), Math.max(h, 1));
+        c.drawText(mTextToDraw, 0, mTextToDraw.length(), 0, -ascent, mTextPaint);
+        mTextPicture.endRecording();
+
+        mPictureText = mTextToDraw;
+        mPictureTextSize = mCurrentTextSize;
+        mPictureTextColor = textColor;
+        mPictureTypeface = typeface;
+        mPictureAscent = ascent;
+    }
+
+    private boolean isTextPictureColor(int textColor) {
+        return mTextPicture != null && mPictureText != null && mPictureTextColor == textColor;
+    }
+
+    private void clearTextPicture() {
+        mTextPicture = null;
+        mPictureText = null;
+    }
+
+    private static boolean canDrawPicture(Canvas canvas) {
+        // Hardware accelerated canvases only support drawPicture() from API 23
+        return Build.VERSION.SDK_INT >= 23 || Build.VERSION.SDK_INT < 11
+                || !canvas.isHardwareAccelerated();
     }
 
     private void setInterpolatedTextSize(final float textSize) {
@@ -450,12 +907,14 @@ final class CollapsingTextHelper {
             mTextPaint.setTextSize(mCurrentTextSize);
 
             // If we don't currently have text to draw, or the text size has changed, ellipsize...
-            final CharSequence title = TextUtils.ellipsize(mText, mTextPaint,
-                    availableWidth, TextUtils.TruncateAt.END);
+            final EllipsizedTextCache.Entry entry = EllipsizedTextCache.get(mText, mTextPaint,
+                    availableWidth, ViewCompat.getLayoutDirection(mView)
+                            == ViewCompat.LAYOUT_DIRECTION_RTL);
+            final CharSequence title = entry.text;
             if (mTextToDraw == null || !mTextToDraw.equals(title)) {
                 mTextToDraw = title;
             }
-            mIsRtl = calculateIsRtl(mTextToDraw);
+            mIsRtl = entry.isRtl;
         }
 
         // Use our texture if the scale isn't 1.0
@@ -465,32 +924,50 @@ final class CollapsingTextHelper {
             // Make sure we have an expanded texture if needed
             ensureExpandedTexture();
         }
-
-        ViewCompat.postInvalidateOnAnimation(mView);
     }
 
     private void ensureExpandedTexture() {
-        if (mExpandedTitleTexture != null || mExpandedBounds.isEmpty()
-                || TextUtils.isEmpty(mTextToDraw)) {
+        if (mExpandedBounds.isEmpty() || TextUtils.isEmpty(mTextToDraw)) {
             return;
         }
 
-        mTextPaint.setTextSize(mExpandedTextSize);
-        mTextPaint.setColor(mExpandedTextColor);
-        mTextureAscent = mTextPaint.ascent();
-        mTextureDescent = mTextPaint.descent();
+        final Typeface typeface = mTextPaint.getTypeface();
+        if (mExpandedTitleTexture != null) {
+            if (mTextureTextSize == mExpandedTextSize && mTextureTypeface == typeface
+                    && TextUtils.equals(mTextureText, mTextToDraw)) {
+                // The texture we have is still valid, so keep using it
+                return;
+            }
+            clearTexture();
+        }
+
+        mTextureAscent = TextMetricsCache.ascent(typeface, mExpandedTextSize);
+        mTextureDescent = TextMetricsCache.descent(typeface, mExpandedTextSize);
 
-        final int w = Math.round(mTextPaint.measureText(mTextToDraw, 0, mTextToDraw.length()));
+        final int w = Math.round(
+                TextMetricsCache.measureText(mTextToDraw, typeface, mExpandedTextSize));
         final int h = Math.round(mTextureDescent - mTextureAscent);
 
-        if (w <= 0 && h <= 0) {
+        if (w <= 0 || h <= 0) {
             return; // If the width or height are 0, return
         }
 
-        mExpandedTitleTexture = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+        mExpandedTitleTexture = TexturePool.acquire(w, h);
+
+        // The texture only holds the text's coverage, it is tinted with the current text color
+        // when drawn so we draw it fully opaque here
+        final int textColor = mTextPaint.getColor();
+        mTextPaint.setTextSize(mExpandedTextSize);
+        mTextPaint.setColor(Color.BLACK);
 
         Canvas c = new Canvas(mExpandedTitleTexture);
-        c.drawText(mTextToDraw, 0, mTextToDraw.length(), 0, h - mTextPaint.descent(), mTextPaint);
+        c.drawText(mTextToDraw, 0, mTextToDraw.length(), 0, h - mTextureDescent, mTextPaint);
+
+        mTextPaint.setColor(textColor);
+
+        mTextureText = mTextToDraw;
+        mTextureTextSize = mExpandedTextSize;
+        mTextureTypeface = typeface;
 
         if (mTexturePaint == null) {
             // Make sure we have a paint
@@ -498,15 +975,45 @@ final class CollapsingTextHelper {
         }
     }
 
+    /**
+     * Marks the offsets as dirty. Rather than recalculating straight away, a single
+     * recalculation is run on the next call to {@link #recalculateIfNeeded()}, which happens at
+     * the latest before the next draw, however many setters are called before then.
+     */
+    private void requestRecalculate() {
+        if (!mRecalculatePending) {
+            mRecalculatePending = true;
+            // Make sure that there is a next draw to recalculate before
+            ViewCompat.postInvalidateOnAnimation(mView);
+        }
+    }
+
+    /**
+     * Runs any recalculation requested since the last one. This should be called on layout and
+     * before drawing.
+     */
+    void recalculateIfNeeded() {
+        if (mRecalculatePending) {
+            recalculate();
+        }
+    }
+
     public void recalculate() {
-        if (mView.getHeight() > 0 && mView.getWidth() > 0) {
+        // The frame table is only invalidated by what it samples, see calculateBaseOffsets()
+        if (hasSize()) {
             // If we've already been laid out, calculate everything now otherwise we'll wait
             // until a layout
+            mRecalculatePending = false;
+            mQuantizedStateValid = false;
             calculateBaseOffsets();
             calculateCurrentOffsets();
         }
     }
 
+    private boolean hasSize() {
+        return mView.getHeight() > 0 && mView.getWidth() > 0;
+    }
+
     /**
      * Set the title to display
      *
@@ -517,7 +1024,8 @@ final class CollapsingTextHelper {
             mText = text;
             mTextToDraw = null;
             clearTexture();
-            recalculate();
+            clearTextPicture();
+            requestRecalculate();
         }
     }
 
@@ -525,10 +1033,22 @@ final class CollapsingTextHelper {
         return mText;
     }
 
+    /**
+     * Gives the texture back to the pool and drops the recorded picture, for when the view
+     * leaves its window. Both are created again by the next draw, if it needs them.
+     */
+    void releaseResources() {
+        clearTexture();
+        clearTextPicture();
+        // Not requestRecalculate(), there's nothing to invalidate until we're attached again
+        mRecalculatePending = true;
+    }
+
     private void clearTexture() {
         if (mExpandedTitleTexture != null) {
-            mExpandedTitleTexture.recycle();
+            TexturePool.release(mExpandedTitleTexture);
             mExpandedTitleTexture = null;
+            mTextureText = null;
         }
     }
 
@@ -540,6 +1060,26 @@ final class CollapsingTextHelper {
         return Math.abs(value - targetValue) < 0.001f;
     }
 
+    float getExpandedDrawX() {
+        return mExpandedDrawX;
+    }
+
+    float getExpandedDrawY() {
+        return mExpandedDrawY;
+    }
+
+    float getCollapsedDrawX() {
+        return mCollapsedDrawX;
+    }
+
+    float getCollapsedDrawY() {
+        return mCollapsedDrawY;
+    }
+
+    int getExpandedBoundsWidth() {
+        return mExpandedBounds.width();
+    }
+
     int getExpandedTextColor() {
         return mExpandedTextColor;
     }
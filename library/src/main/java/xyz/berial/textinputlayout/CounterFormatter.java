@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.berial.textinputlayout;
+
+import android.graphics.Paint;
+
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+/**
+ * Formats the counter text into a reusable char buffer, without the boxing, {@code Formatter}
+ * and {@code String} allocations of {@code Resources.getString(int, Object...)}.
+ * <p>
+ * The pattern is the {@code counterMaxLength} string resource, which is parsed once. It must
+ * contain {@code %1$d} for the current length and {@code %2$d} for the maximum length, in any
+ * order. Digits are written using the zero digit of the given locale, as {@code String.format}
+ * would.
+ */
+final class CounterFormatter {
+
+    private static final String CURRENT_LENGTH = "%1$d";
+    private static final String MAX_LENGTH = "%2$d";
+
+    // Enough for the sign and digits of any int
+    private static final int MAX_NUMBER_LENGTH = 11;
+
+    private final String mPrefix;
+    private final String mSeparator;
+    private final String mSuffix;
+    // Whether the maximum length comes before the current length in the pattern
+    private final boolean mMaxLengthFirst;
+
+    private final char[] mBuffer;
+    // Scratch space for measureWidest(), so that measuring doesn't clobber the formatted text
+    private final char[] mMeasureBuffer;
+
+    private Locale mLocale;
+    private char mZeroDigit = '0';
+
+    CounterFormatter(String pattern) {
+        int first = pattern.indexOf(CURRENT_LENGTH);
+        int second = pattern.indexOf(MAX_LENGTH);
+
+        if (first < 0 || second < 0) {
+            // Not a pattern we understand, so fall back to the default one
+            pattern = CURRENT_LENGTH + "/" + MAX_LENGTH;
+            first = 0;
+            second = pattern.indexOf(MAX_LENGTH);
+        }
+
+        mMaxLengthFirst = second < first;
+        final int start = Math.min(first, second);
+        final int end = Math.max(first, second);
+
+        // Both placeholders have the same length
+        mPrefix = pattern.substring(0, start);
+        mSeparator = pattern.substring(start + CURRENT_LENGTH.length(), end);
+        mSuffix = pattern.substring(end + CURRENT_LENGTH.length());
+
+        mBuffer = new char[mPrefix.length() + mSeparator.length() + mSuffix.length()
+                + 2 * MAX_NUMBER_LENGTH];
+        mMeasureBuffer = new char[mBuffer.length];
+    }
+
+    /**
+     * Formats the counter text into {@link #getBuffer()}.
+     *
+     * @return the number of chars written
+     */
+    int format(int currentLength, int maxLength, Locale locale) {
+        setLocale(locale);
+
+        int index = append(mPrefix, mBuffer, 0);
+        index = appendNumber(mMaxLengthFirst ? maxLength : currentLength, index);
+        index = append(mSeparator, mBuffer, index);
+        index = appendNumber(mMaxLengthFirst ? currentLength : maxLength, index);
+        index = append(mSuffix, mBuffer, index);
+        return index;
+    }
+
+    char[] getBuffer() {
+        return mBuffer;
+    }
+
+    /**
+     * Returns the width of the widest text {@link #format(int, int, Locale)} can produce when the
+     * current and maximum lengths have the given number of digits, by treating every digit as
+     * the widest one in {@code paint}. This leaves the text written by the last call to
+     * {@link #format(int, int, Locale)} as it is.
+     */
+    float measureWidest(Paint paint, int currentDigits, int maxDigits, Locale locale) {
+        setLocale(locale);
+
+        final char[] buffer = mMeasureBuffer;
+        float widestDigit = 0;
+        for (int i = 0; i < 10; i++) {
+            buffer[0] = (char) (mZeroDigit + i);
+            widestDigit = Math.max(widestDigit, paint.measureText(buffer, 0, 1));
+        }
+
+        final int length = append(mSuffix, buffer,
+                append(mSeparator, buffer, append(mPrefix, buffer, 0)));
+        return paint.measureText(buffer, 0, length)
+                + (currentDigits + maxDigits) * widestDigit;
+    }
+
+    /**
+     * Returns the number of chars {@code number} is formatted with, including any sign.
+     */
+    static int countDigits(int number) {
+        // Use a long so that negating Integer.MIN_VALUE doesn't overflow
+        long value = number;
+        int digits = 1;
+        if (value < 0) {
+            digits++;
+            value = -value;
+        }
+        for (value /= 10; value > 0; value /= 10) {
+            digits++;
+        }
+        return digits;
+    }
+
+    private void setLocale(Locale locale) {
+        if (locale != mLocale) {
+            mLocale = locale;
+            mZeroDigit = locale != null
+                    ? new DecimalFormatSymbols(locale).getZeroDigit()
+                    : '0';
+        }
+    }
+
+    private static int append(String text, char[] buffer, int index) {
+        final int length = text.length();
+        text.getChars(0, length, buffer, index);
+        return index + length;
+    }
+
+    private int appendNumber(int number, int index) {
+        // Use a long so that negating Integer.MIN_VALUE doesn't overflow
+        long value = number;
+        if (value < 0) {
+            mBuffer[index++] = '-';
+            value = -value;
+        }
+
+        int digits = 1;
+        for (long v = value / 10; v > 0; v /= 10) {
+            digits++;
+        }
+
+        // Write the digits from the last one backwards
+        for (int i = index + digits - 1; i >= index; i--) {
+            mBuffer[i] = (char) (mZeroDigit + (value % 10));
+            value /= 10;
+        }
+        return index + digits;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.berial.textinputlayout;
+
+import android.graphics.Typeface;
+import android.support.v4.text.TextDirectionHeuristicsCompat;
+import android.support.v4.util.LruCache;
+import android.text.TextPaint;
+import android.text.TextUtils;
+
+/**
+ * A small, bounded LRU cache of ellipsized hint text and its resolved text direction, shared by
+ * every {@link CollapsingTextHelper} in the process.
+ * <p>
+ * This should only be accessed from the main thread.
+ */
+final class EllipsizedTextCache {
+
+    private static final int MAX_SIZE = 64;
+
+    private static final LruCache<Key, Entry> CACHE = new LruCache<>(MAX_SIZE);
+
+    // Reused for lookups so that a cache hit doesn't allocate
+    private static final Key LOOKUP_KEY = new Key();
+
+    static final class Entry {
+        final CharSequence text;
+        final boolean isRtl;
+
+        Entry(CharSequence text, boolean isRtl) {
+            this.text = text;
+            this.isRtl = isRtl;
+        }
+    }
+
+    private EllipsizedTextCache() {
+    }
+
+    /**
+     * Returns {@code text} ellipsized to {@code availableWidth} using {@code paint}, along with
+     * whether the result should be drawn right-to-left.
+     *
+     * @param paint the paint to measure with, its text size and typeface must already be set
+     * @param defaultIsRtl whether the layout direction of the owning view is right-to-left
+     */
+    static Entry get(CharSequence text, TextPaint paint, float availableWidth,
+            boolean defaultIsRtl) {
+        final Typeface typeface = paint.getTypeface();
+        final float textSize = paint.getTextSize();
+
+        LOOKUP_KEY.set(text, typeface, textSize, availableWidth, defaultIsRtl);
+        Entry entry = CACHE.get(LOOKUP_KEY);
+        if (entry == null) {
+            final CharSequence ellipsized = TextUtils.ellipsize(text, paint, availableWidth,
+                    TextUtils.TruncateAt.END);
+            final boolean isRtl = (defaultIsRtl
+                    ? TextDirectionHeuristicsCompat.FIRSTSTRONG_RTL
+                    : TextDirectionHeuristicsCompat.FIRSTSTRONG_LTR)
+                    .isRtl(ellipsized, 0, ellipsized.length());
+            entry = new Entry(ellipsized, isRtl);
+
+            final Key key = new Key();
+            key.set(text.toString(), typeface, textSize, availableWidth, defaultIsRtl);
+            CACHE.put(key, entry);
+        }
+        LOOKUP_KEY.set(null, null, 0, 0, false);
+        return entry;
+    }
+
+    static int hitCount() {
+        return CACHE.hitCount();
+    }
+
+    static int missCount() {
+        return CACHE.missCount();
+    }
+
+    private static final class Key {
+        private CharSequence mText;
+        private Typeface mTypeface;
+        private float mTextSize;
+        private float mAvailableWidth;
+        private boolean mDefaultIsRtl;
+
+        void set(CharSequence text, Typeface typeface, float textSize, float availableWidth,
+                boolean defaultIsRtl) {
+            mText = text;
+            mTypeface = typeface;
+            mTextSize = textSize;
+            mAvailableWidth = availableWidth;
+            mDefaultIsRtl = defaultIsRtl;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return mTextSize == other.mTextSize
+                    && mAvailableWidth == other.mAvailableWidth
+                    && mDefaultIsRtl == other.mDefaultIsRtl
+                    && mTypeface == other.mTypeface
+                    && TextUtils.equals(mText, other.mText);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = TextMetricsCache.contentHashCode(mText);
+            result = 31 * result + (mTypeface != null ? mTypeface.hashCode() : 0);
+            result = 31 * result + Float.floatToIntBits(mTextSize);
+            result = 31 * result + Float.floatToIntBits(mAvailableWidth);
+            result = 31 * result + (mDefaultIsRtl ? 1 : 0);
+            return result;
+        }
+    }
+}
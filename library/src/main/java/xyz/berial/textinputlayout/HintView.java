@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.berial.textinputlayout;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.support.v4.view.ViewCompat;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.view.View;
+
+/**
+ * A lightweight view which draws the hint once, at its expanded size and position. The
+ * collapse/expand animation is then done purely through view properties (translation, scale
+ * and alpha), so that the content is only drawn again when the hint itself changes.
+ * <p>
+ * It measures to nothing so that it doesn't take any space in {@link TextInputLayout}, which
+ * lays it out over its whole area.
+ */
+final class HintView extends View {
+
+    private final TextPaint mTextPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+
+    private CharSequence mText;
+    private CharSequence mTextToDraw;
+    private float mAvailableWidth;
+    private float mOriginX;
+    private float mOriginY;
+
+    HintView(Context context) {
+        super(context);
+        // The hint is already reported by TextInputLayout's accessibility delegate
+        ViewCompat.setImportantForAccessibility(this, ViewCompat.IMPORTANT_FOR_ACCESSIBILITY_NO);
+    }
+
+    /**
+     * Set the text to draw, which will be ellipsized to {@code availableWidth}.
+     */
+    void setText(CharSequence text, Typeface typeface, float textSize, float availableWidth) {
+        if (TextUtils.equals(mText, text) && mTextPaint.getTypeface() == typeface
+                && mTextPaint.getTextSize() == textSize && mAvailableWidth == availableWidth) {
+            return;
+        }
+
+        mText = text;
+        mAvailableWidth = availableWidth;
+        mTextPaint.setTypeface(typeface);
+        mTextPaint.setTextSize(textSize);
+
+        if (!TextUtils.isEmpty(text) && availableWidth > 0) {
+            mTextToDraw = EllipsizedTextCache.get(text, mTextPaint, availableWidth,
+                    ViewCompat.getLayoutDirection(this) == ViewCompat.LAYOUT_DIRECTION_RTL).text;
+        } else {
+            mTextToDraw = null;
+        }
+        invalidate();
+    }
+
+    /**
+     * Set the baseline origin the text is drawn at. This is also the pivot used for scaling, so
+     * that scaling keeps the text's origin in place.
+     */
+    void setOrigin(float x, float y) {
+        if (mOriginX != x || mOriginY != y) {
+            mOriginX = x;
+            mOriginY = y;
+            ViewCompat.setPivotX(this, x);
+            ViewCompat.setPivotY(this, y);
+            invalidate();
+        }
+    }
+
+    void setTextColor(int color) {
+        if (mTextPaint.getColor() != color) {
+            mTextPaint.setColor(color);
+            invalidate();
+        }
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        // Don't take any space, we are laid out over the whole of our parent
+        setMeasuredDimension(0, 0);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (mTextToDraw != null) {
+            canvas.drawText(mTextToDraw, 0, mTextToDraw.length(), mOriginX, mOriginY,
+                    mTextPaint);
+        }
+    }
+}
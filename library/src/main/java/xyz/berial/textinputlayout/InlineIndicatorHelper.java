@@ -0,0 +1,304 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.berial.textinputlayout;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.support.v4.view.ViewCompat;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.view.View;
+
+/**
+ * Lays out and draws the error and counter text directly on the canvas of the view, rather than
+ * through a {@code RelativeLayout} holding a {@code TextView} for each, similar to how
+ * {@link CollapsingTextHelper} draws the hint.
+ */
+final class InlineIndicatorHelper {
+
+    private static final int ANIMATION_DURATION = 200;
+
+    private final View mView;
+
+    private final TextPaint mErrorPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private final TextPaint mCounterPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private int mErrorColor;
+
+    private boolean mErrorEnabled;
+    private CharSequence mError;
+    private CharSequence mErrorToDraw;
+    private float mErrorAvailableWidth = -1;
+    private boolean mErrorVisible;
+    private boolean mHidingError;
+    private boolean mErrorAnimationCancelled;
+    private float mErrorAlpha;
+    private ValueAnimatorCompat mErrorAnimator;
+
+    private boolean mCounterEnabled;
+    private char[] mCounterText;
+    private int mCounterLength;
+
+    private int mPaddingStart;
+    private int mPaddingEnd;
+    private int mPaddingBottom;
+
+    // Where we last drew, so that we only invalidate that area
+    private final Rect mBounds = new Rect();
+
+    InlineIndicatorHelper(View view) {
+        mView = view;
+    }
+
+    void setErrorEnabled(boolean enabled) {
+        if (mErrorEnabled != enabled) {
+            mErrorEnabled = enabled;
+            if (!enabled) {
+                if (mErrorAnimator != null) {
+                    mErrorAnimator.cancel();
+                }
+                mError = null;
+                mErrorToDraw = null;
+                mErrorVisible = false;
+            }
+            mView.requestLayout();
+        }
+    }
+
+    void setCounterEnabled(boolean enabled) {
+        if (mCounterEnabled != enabled) {
+            mCounterEnabled = enabled;
+            if (!enabled) {
+                mCounterLength = 0;
+            }
+            mView.requestLayout();
+        }
+    }
+
+    void setErrorTextAppearance(int resId) {
+        applyTextAppearance(resId, mErrorPaint);
+        mErrorColor = mErrorPaint.getColor();
+        mErrorToDraw = null;
+        mView.requestLayout();
+    }
+
+    void setCounterTextAppearance(int resId) {
+        applyTextAppearance(resId, mCounterPaint);
+        mErrorToDraw = null;
+        mView.requestLayout();
+    }
+
+    int getErrorColor() {
+        return mErrorColor;
+    }
+
+    void setPadding(int start, int end, int bottom) {
+        if (mPaddingStart != start || mPaddingEnd != end || mPaddingBottom != bottom) {
+            mPaddingStart = start;
+            mPaddingEnd = end;
+            mPaddingBottom = bottom;
+            mErrorToDraw = null;
+            mView.requestLayout();
+        }
+    }
+
+    /**
+     * Shows {@code error}, fading it in.
+     */
+    void showError(CharSequence error) {
+        mError = error;
+        mErrorToDraw = null;
+        mErrorVisible = true;
+        animateErrorAlpha(0f, 1f, false);
+    }
+
+    /**
+     * Fades out the current error, if it is visible.
+     */
+    void hideError() {
+        if (mErrorVisible) {
+            animateErrorAlpha(mErrorAlpha, 0f, true);
+        }
+    }
+
+    /**
+     * Jumps the error to the end of any fade in or out.
+     */
+    void skipErrorAnimation() {
+        if (mErrorAnimator == null || !mErrorAnimator.isRunning()) {
+            return;
+        }
+        mErrorAnimator.cancel();
+        if (mHidingError) {
+            mErrorVisible = false;
+            mErrorAlpha = 0f;
+        } else {
+            mErrorAlpha = 1f;
+        }
+        invalidate();
+    }
+
+    /**
+     * Returns whether the error is visible, which includes while it is fading out.
+     */
+    boolean isErrorVisible() {
+        return mErrorVisible;
+    }
+
+    /**
+     * Returns the last error which was shown, even if it has since been hidden.
+     */
+    CharSequence getError() {
+        return mError;
+    }
+
+    /**
+     * Returns a copy of the counter text being drawn, or null if there is none. This allocates,
+     * so it is only meant for accessibility.
+     */
+    CharSequence getCounterText() {
+        if (!mCounterEnabled || mCounterText == null || mCounterLength == 0) {
+            return null;
+        }
+        return new String(mCounterText, 0, mCounterLength);
+    }
+
+    /**
+     * Set the counter text. The buffer is not copied, so it should not be modified until the
+     * next call to this method.
+     */
+    void setCounterText(char[] text, int length) {
+        mCounterText = text;
+        mCounterLength = length;
+        // The counter's width might have changed, which changes the room left for the error
+        mErrorToDraw = null;
+        invalidate();
+    }
+
+    /**
+     * Returns the height needed to draw the indicators, or 0 if none are enabled.
+     */
+    int getHeight() {
+        int height = 0;
+        if (mErrorEnabled) {
+            height = getLineHeight(mErrorPaint);
+        }
+        if (mCounterEnabled) {
+            height = Math.max(height, getLineHeight(mCounterPaint));
+        }
+        return height > 0 ? height + mPaddingBottom : 0;
+    }
+
+    /**
+     * Draws the indicators in the area starting at {@code top}, between {@code left} and
+     * {@code right}.
+     */
+    void draw(Canvas canvas, int left, int top, int right) {
+        mBounds.set(left, top, right, top + getHeight());
+
+        final boolean isRtl = ViewCompat.getLayoutDirection(mView)
+                == ViewCompat.LAYOUT_DIRECTION_RTL;
+        final int innerLeft = left + (isRtl ? mPaddingEnd : mPaddingStart);
+        final int innerRight = right - (isRtl ? mPaddingStart : mPaddingEnd);
+
+        float counterWidth = 0;
+        if (mCounterEnabled && mCounterText != null && mCounterLength > 0) {
+            counterWidth = mCounterPaint.measureText(mCounterText, 0, mCounterLength);
+
+            // The counter is vertically centered, and aligned to the right
+            final float ascent = mCounterPaint.ascent();
+            final float lineHeight = mCounterPaint.descent() - ascent;
+            final float y = top + (mBounds.height() - mPaddingBottom - lineHeight) / 2 - ascent;
+            canvas.drawText(mCounterText, 0, mCounterLength, innerRight - counterWidth, y,
+                    mCounterPaint);
+        }
+
+        if (mErrorEnabled && mErrorVisible && mError != null) {
+            final float availableWidth = innerRight - innerLeft - counterWidth;
+            if (mErrorToDraw == null || mErrorAvailableWidth != availableWidth) {
+                mErrorToDraw = availableWidth > 0
+                        ? TextUtils.ellipsize(mError, mErrorPaint, availableWidth,
+                                TextUtils.TruncateAt.END)
+                        : "";
+                mErrorAvailableWidth = availableWidth;
+            }
+
+            mErrorPaint.setColor(mErrorColor);
+            mErrorPaint.setAlpha(Math.round(Color.alpha(mErrorColor) * mErrorAlpha));
+            canvas.drawText(mErrorToDraw, 0, mErrorToDraw.length(), innerLeft,
+                    top - mErrorPaint.ascent(), mErrorPaint);
+        }
+    }
+
+    private void animateErrorAlpha(float from, float to, boolean hiding) {
+        if (mErrorAnimator == null) {
+            mErrorAnimator = ViewUtils.createAnimator();
+            mErrorAnimator.setDuration(ANIMATION_DURATION);
+            mErrorAnimator.setInterpolator(AnimationUtils.FAST_OUT_SLOW_IN_INTERPOLATOR);
+            mErrorAnimator.setUpdateListener(new ValueAnimatorCompat.AnimatorUpdateListener() {
+                @Override
+                public void onAnimationUpdate(ValueAnimatorCompat animator) {
+                    mErrorAlpha = animator.getAnimatedFloatValue();
+                    invalidate();
+                }
+            });
+            mErrorAnimator.setListener(new ValueAnimatorCompat.AnimatorListenerAdapter() {
+                @Override
+                public void onAnimationStart(ValueAnimatorCompat animator) {
+                    mErrorAnimationCancelled = false;
+                }
+
+                @Override
+                public void onAnimationCancel(ValueAnimatorCompat animator) {
+                    mErrorAnimationCancelled = true;
+                }
+
+                @Override
+                public void onAnimationEnd(ValueAnimatorCompat animator) {
+                    if (mHidingError && !mErrorAnimationCancelled) {
+                        mErrorVisible = false;
+                    }
+                }
+            });
+        }
+
+        mErrorAnimator.cancel();
+        mHidingError = hiding;
+        mErrorAlpha = from;
+        mErrorAnimator.setFloatValues(from, to);
+        mErrorAnimator.start();
+    }
+
+    private void invalidate() {
+        if (mBounds.isEmpty()) {
+            mView.invalidate();
+        } else {
+            ViewCompat.postInvalidateOnAnimation(mView,
+                    mBounds.left, mBounds.top, mBounds.right, mBounds.bottom);
+        }
+    }
+
+    private void applyTextAppearance(int resId, TextPaint paint) {
+        ResolvedTextAppearance.get(mView.getContext(), resId).apply(paint);
+    }
+
+    private static int getLineHeight(TextPaint paint) {
+        return (int) Math.ceil(TextMetricsCache.descent(paint.getTypeface(), paint.getTextSize())
+                - TextMetricsCache.ascent(paint.getTypeface(), paint.getTextSize()));
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.berial.textinputlayout;
+
+import java.text.BreakIterator;
+
+/**
+ * The built-in {@link TextInputLayout.LengthCounter}s. Each call returns a new counter, as
+ * counters hold the count of the text they were attached to.
+ * <p>
+ * All of them update their count, and find where to truncate inserted text, in time
+ * proportional to the size of each edit rather than to the length of the text.
+ */
+public final class LengthCounters {
+
+    private LengthCounters() {
+    }
+
+    /**
+     * Returns a counter of UTF-16 code units, which is what {@link CharSequence#length()} returns.
+     */
+    public static TextInputLayout.LengthCounter utf16() {
+        return new WindowedLengthCounter(0) {
+            @Override
+            int count(CharSequence text, int start, int end) {
+                return end - start;
+            }
+
+            @Override
+            public int findCutoff(CharSequence text, int start, int end, int maxLength) {
+                int cutoff = start + Math.min(end - start, Math.max(0, maxLength));
+                if (cutoff > start && cutoff < end
+                        && Character.isHighSurrogate(text.charAt(cutoff - 1))
+                        && Character.isLowSurrogate(text.charAt(cutoff))) {
+                    // Don't split a surrogate pair
+                    cutoff--;
+                }
+                return cutoff;
+            }
+        };
+    }
+
+    /**
+     * Returns a counter of Unicode code points, where a surrogate pair counts as one and an
+     * unpaired surrogate also counts as one.
+     */
+    public static TextInputLayout.LengthCounter codePoints() {
+        return new WindowedLengthCounter(1) {
+            @Override
+            int count(CharSequence text, int start, int end) {
+                return Character.codePointCount(text, start, end);
+            }
+
+            @Override
+            public int findCutoff(CharSequence text, int start, int end, int maxLength) {
+                int cutoff = start;
+                for (int count = 0; cutoff < end && count < maxLength; count++) {
+                    cutoff = nextCodePoint(text, cutoff, end);
+                }
+                return cutoff;
+            }
+        };
+    }
+
+    /**
+     * Returns a counter of grapheme clusters (user-perceived characters), as found by
+     * {@link BreakIterator#getCharacterInstance()}.
+     * <p>
+     * Clusters are found around each edit only, so clusters longer than 32 chars, or runs of
+     * regional indicators which are paired up differently by an edit further away than that,
+     * may be miscounted.
+     */
+    public static TextInputLayout.LengthCounter graphemeClusters() {
+        return new WindowedLengthCounter(32) {
+            private final BreakIterator mBreakIterator = BreakIterator.getCharacterInstance();
+
+            @Override
+            int count(CharSequence text, int start, int end) {
+                if (start == end) {
+                    return 0;
+                }
+                mBreakIterator.setText(text.subSequence(start, end).toString());
+                int count = 0;
+                mBreakIterator.first();
+                while (mBreakIterator.next() != BreakIterator.DONE) {
+                    count++;
+                }
+                return count;
+            }
+
+            @Override
+            public int findCutoff(CharSequence text, int start, int end, int maxLength) {
+                if (start == end || maxLength <= 0) {
+                    return start;
+                }
+                mBreakIterator.setText(text.subSequence(start, end).toString());
+                int cutoff = mBreakIterator.first();
+                for (int count = 0; count < maxLength; count++) {
+                    final int next = mBreakIterator.next();
+                    if (next == BreakIterator.DONE) {
+                        break;
+                    }
+                    cutoff = next;
+                }
+                return start + cutoff;
+            }
+        };
+    }
+
+    /**
+     * Returns a counter of the bytes the text takes when encoded in UTF-8. Unpaired surrogates
+     * count as the 3 bytes of the replacement character they are encoded as.
+     */
+    public static TextInputLayout.LengthCounter utf8Bytes() {
+        return new WindowedLengthCounter(1) {
+            @Override
+            int count(CharSequence text, int start, int end) {
+                int count = 0;
+                for (int i = start; i < end; i = nextCodePoint(text, i, end)) {
+                    count += utf8Length(text, i, end);
+                }
+                return count;
+            }
+
+            @Override
+            public int findCutoff(CharSequence text, int start, int end, int maxLength) {
+                int cutoff = start;
+                for (int count = 0; cutoff < end; ) {
+                    count += utf8Length(text, cutoff, end);
+                    if (count > maxLength) {
+                        break;
+                    }
+                    cutoff = nextCodePoint(text, cutoff, end);
+                }
+                return cutoff;
+            }
+        };
+    }
+
+    /**
+     * Returns what of {@code source} between {@code start} and {@code end} can replace
+     * {@code dest} between {@code dstart} and {@code dend} without the text going over
+     * {@code maxLength}, as counted by {@code counter}, which holds the count of {@code dest}.
+     * Returns null if all of it fits, as an {@link android.text.InputFilter} does.
+     */
+    static CharSequence truncateToFit(TextInputLayout.LengthCounter counter, int maxLength,
+            CharSequence source, int start, int end, CharSequence dest, int dstart, int dend) {
+        if (start == end) {
+            // Nothing is being inserted, only removed
+            return null;
+        }
+
+        final int removed = dstart < dend ? counter.measure(dest, dstart, dend) : 0;
+        final int remaining = maxLength - (counter.getLength() - removed);
+        if (remaining <= 0) {
+            return "";
+        }
+
+        final int cutoff = counter.findCutoff(source, start, end, remaining);
+        if (cutoff >= end) {
+            // It all fits
+            return null;
+        }
+        return source.subSequence(start, cutoff);
+    }
+
+    /**
+     * Returns the index after the code point at {@code index}, not going past {@code end}.
+     */
+    static int nextCodePoint(CharSequence text, int index, int end) {
+        if (Character.isHighSurrogate(text.charAt(index)) && index + 1 < end
+                && Character.isLowSurrogate(text.charAt(index + 1))) {
+            return index + 2;
+        }
+        return index + 1;
+    }
+
+    /**
+     * Returns the number of bytes of the UTF-8 encoding of the code point at {@code index}.
+     */
+    private static int utf8Length(CharSequence text, int index, int end) {
+        final char c = text.charAt(index);
+        if (c < 0x80) {
+            return 1;
+        } else if (c < 0x800) {
+            return 2;
+        } else if (nextCodePoint(text, index, end) == index + 2) {
+            return 4;
+        }
+        // Includes unpaired surrogates, which are encoded as the replacement character
+        return 3;
+    }
+
+    /**
+     * Keeps a count up to date by only counting the window around each edit, before and after
+     * it, and adding the difference.
+     * <p>
+     * The window extends {@code context} chars either side of the edit, which must be enough
+     * for any unit being counted that crosses the window's edges to be counted the same way
+     * before and after the edit. As those chars are outside of the edit, they are the same in
+     * both windows.
+     */
+    abstract static class WindowedLengthCounter implements TextInputLayout.LengthCounter {
+
+        private final int mContext;
+
+        private int mLength;
+        private int mWindowStart;
+        private int mBeforeWindowCount;
+        private boolean mEditPending;
+
+        WindowedLengthCounter(int context) {
+            mContext = context;
+        }
+
+        /**
+         * Returns the count of {@code text} between {@code start} and {@code end}.
+         */
+        abstract int count(CharSequence text, int start, int end);
+
+        @Override
+        public int measure(CharSequence text, int start, int end) {
+            return count(text, start, end);
+        }
+
+        @Override
+        public void reset(CharSequence text) {
+            mLength = text != null ? count(text, 0, text.length()) : 0;
+            mEditPending = false;
+        }
+
+        @Override
+        public void beforeTextChanged(CharSequence text, int start, int count, int after) {
+            mWindowStart = Math.max(0, start - mContext);
+            final int end = Math.min(text.length(), start + count + mContext);
+            mBeforeWindowCount = count(text, mWindowStart, end);
+            mEditPending = true;
+        }
+
+        @Override
+        public void onTextChanged(CharSequence text, int start, int before, int count) {
+            if (!mEditPending) {
+                // We didn't see the text before the edit, so count it all
+                reset(text);
+                return;
+            }
+            mEditPending = false;
+
+            final int end = Math.min(text.length(), start + count + mContext);
+            mLength += count(text, mWindowStart, end) - mBeforeWindowCount;
+        }
+
+        @Override
+        public int getLength() {
+            return mLength;
+        }
+    }
+}
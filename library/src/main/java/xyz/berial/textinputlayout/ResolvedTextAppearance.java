@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.berial.textinputlayout;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.util.SparseArray;
+import android.util.TypedValue;
+import android.widget.TextView;
+
+import java.util.WeakHashMap;
+
+/**
+ * The color, size and typeface of a TextAppearance style, resolved once per theme.
+ * <p>
+ * Resolving a style with {@code obtainStyledAttributes} is not free, and
+ * {@link TextView#setTextAppearance(Context, int)} does it on every call. Instances are
+ * immutable and shared by every view using the same style in the same theme, so switching
+ * between appearances (such as when the counter goes over its limit) only sets the values.
+ * <p>
+ * This should only be accessed from the main thread.
+ */
+final class ResolvedTextAppearance {
+
+    // Values of android:typeface
+    private static final int SANS = 1;
+    private static final int SERIF = 2;
+    private static final int MONOSPACE = 3;
+
+    // Themes are only weakly referenced, so that we don't keep an Activity's alive
+    private static final WeakHashMap<Resources.Theme, SparseArray<ResolvedTextAppearance>>
+            CACHE = new WeakHashMap<>();
+
+    private final ColorStateList mTextColor;
+    private final float mTextSize;
+    private final Typeface mTypeface;
+    private final int mTextStyle;
+    private final boolean mHasTypeface;
+
+    private ResolvedTextAppearance(ColorStateList textColor, float textSize, Typeface typeface,
+            int textStyle, boolean hasTypeface) {
+        mTextColor = textColor;
+        mTextSize = textSize;
+        mTypeface = typeface;
+        mTextStyle = textStyle;
+        mHasTypeface = hasTypeface;
+    }
+
+    /**
+     * Returns the resolved TextAppearance {@code resId} in {@code context}'s theme, resolving
+     * it if this is the first time it is asked for in that theme.
+     */
+    static ResolvedTextAppearance get(Context context, int resId) {
+        final Resources.Theme theme = context.getTheme();
+        SparseArray<ResolvedTextAppearance> appearances = CACHE.get(theme);
+        if (appearances == null) {
+            appearances = new SparseArray<>();
+            CACHE.put(theme, appearances);
+        }
+
+        ResolvedTextAppearance appearance = appearances.get(resId);
+        if (appearance == null) {
+            appearance = resolve(context, resId);
+            appearances.put(resId, appearance);
+        }
+        return appearance;
+    }
+
+    private static ResolvedTextAppearance resolve(Context context, int resId) {
+        final TypedArray a = context.obtainStyledAttributes(resId,
+                R.styleable.ResolvedTextAppearance);
+        try {
+            final ColorStateList textColor = a.getColorStateList(
+                    R.styleable.ResolvedTextAppearance_android_textColor);
+            final float textSize = a.getDimensionPixelSize(
+                    R.styleable.ResolvedTextAppearance_android_textSize, -1);
+            final int typefaceIndex = a.getInt(
+                    R.styleable.ResolvedTextAppearance_android_typeface, -1);
+            final int textStyle = a.getInt(
+                    R.styleable.ResolvedTextAppearance_android_textStyle, Typeface.NORMAL);
+            final boolean hasTypeface =
+                    a.hasValue(R.styleable.ResolvedTextAppearance_android_typeface)
+                            || a.hasValue(R.styleable.ResolvedTextAppearance_android_textStyle);
+            return new ResolvedTextAppearance(textColor, textSize,
+                    createTypeface(typefaceIndex, textStyle), textStyle, hasTypeface);
+        } finally {
+            a.recycle();
+        }
+    }
+
+    private static Typeface createTypeface(int typefaceIndex, int textStyle) {
+        final Typeface family;
+        switch (typefaceIndex) {
+            case SANS:
+                family = Typeface.SANS_SERIF;
+                break;
+            case SERIF:
+                family = Typeface.SERIF;
+                break;
+            case MONOSPACE:
+                family = Typeface.MONOSPACE;
+                break;
+            default:
+                family = null;
+                break;
+        }
+        return family != null || textStyle != Typeface.NORMAL
+                ? Typeface.create(family, textStyle)
+                : null;
+    }
+
+    /**
+     * Returns the text colors, or null if the style doesn't set any.
+     */
+    ColorStateList getTextColor() {
+        return mTextColor;
+    }
+
+    /**
+     * Returns the text size in pixels, or a negative value if the style doesn't set one.
+     */
+    float getTextSize() {
+        return mTextSize;
+    }
+
+    /**
+     * Applies this appearance to {@code textView}, in the same way as
+     * {@link TextView#setTextAppearance(Context, int)} would.
+     */
+    void apply(TextView textView) {
+        if (mTextColor != null) {
+            textView.setTextColor(mTextColor);
+        }
+        if (mTextSize >= 0) {
+            textView.setTextSize(TypedValue.COMPLEX_UNIT_PX, mTextSize);
+        }
+        if (mHasTypeface) {
+            textView.setTypeface(mTypeface, mTextStyle);
+        }
+    }
+
+    /**
+     * Applies this appearance to {@code paint}, using the default color of the text colors.
+     */
+    void apply(Paint paint) {
+        if (mTextColor != null) {
+            paint.setColor(mTextColor.getDefaultColor());
+        }
+        if (mTextSize >= 0) {
+            paint.setTextSize(mTextSize);
+        }
+        if (mHasTypeface) {
+            paint.setTypeface(mTypeface);
+
+            // Fake whatever style the typeface doesn't have, as TextView does
+            final int typefaceStyle = mTypeface != null ? mTypeface.getStyle() : Typeface.NORMAL;
+            final int need = mTextStyle & ~typefaceStyle;
+            paint.setFakeBoldText((need & Typeface.BOLD) != 0);
+            paint.setTextSkewX((need & Typeface.ITALIC) != 0 ? -0.25f : 0);
+        }
+    }
+}
@@ -22,7 +22,6 @@ import android.content.res.Resources;
 import android.content.res.TypedArray;
 import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.Paint;
 import android.graphics.Typeface;
 import android.os.Build;
 import android.support.annotation.Nullable;
@@ -33,6 +32,9 @@ import android.support.v4.view.ViewCompat;
 import android.support.v4.view.ViewPropertyAnimatorListenerAdapter;
 import android.support.v4.view.accessibility.AccessibilityNodeInfoCompat;
 import android.text.Editable;
+import android.text.InputFilter;
+import android.text.Spanned;
+import android.text.TextPaint;
 import android.text.TextUtils;
 import android.text.TextWatcher;
 import android.util.AttributeSet;
@@ -40,13 +42,16 @@ import android.util.TypedValue;
 import android.view.Gravity;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 import android.view.accessibility.AccessibilityEvent;
-import android.view.animation.AccelerateInterpolator;
 import android.widget.EditText;
 import android.widget.LinearLayout;
 import android.widget.RelativeLayout;
 import android.widget.TextView;
 
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+
 /**
  * Layout which wraps an {@link EditText} (or descendant) to show a floating label
  * when the hint is hidden due to the user inputting text.
@@ -62,18 +67,44 @@ public class TextInputLayout extends LinearLayout {
     private CharSequence mHint;
     private Resources mResources;
 
-    private Paint mTmpPaint;
-
     /*custom*/
-    private RelativeLayout mBottomBar; // 底部提示框, 用于存放 errorView 和 textLengthLimitView
+    // 底部提示框, 用于存放 errorView 和 textLengthLimitView. Only created when first needed.
+    private RelativeLayout mBottomBar;
     private TextView mCounterView;
     private boolean mCounterEnabled;
     private int mCounterMaxLength;
+    private int mCounterTextAppearance;
+    private int mCounterOverflowTextAppearance;
+    // Whether the text is over mCounterMaxLength, and the counter is styled for it
+    private boolean mCounterOverflowed;
+    private ColorStateList mCounterOverflowTintList;
+    private CounterFormatter mCounterFormatter;
+    private LengthCounter mLengthCounter = LengthCounters.utf16();
+    // Only set while the maximum length is enforced, see setCounterMaxLengthEnforced()
+    private InputFilter mMaxLengthFilter;
+
+    // Created when the first validator is added, see addValidator()
+    private ValidationPipeline mValidationPipeline;
+    // What the counter's fixed width was reserved for, see updateCounterWidth()
+    private int mCounterReservedWidth = -1;
+    private int mCounterReservedDigits;
+    private int mCounterReservedMaxLength;
+    private int mCounterReservedPadding;
+    private float mCounterReservedTextSize;
+    private Typeface mCounterReservedTypeface;
     /*custom*/
 
     private boolean mErrorEnabled;
     private TextView mErrorView;
     private int mErrorTextAppearance;
+    private ColorStateList mErrorTintList;
+    // Whether an error is shown, and so tinting the EditText, ignoring any fade out
+    private boolean mErrorShown;
+    // Whether we changed the EditText's background tint, see updateEditTextTint()
+    private boolean mEditTextTinted;
+
+    // Only used when the error and counter are drawn by us, see setInlineIndicatorsEnabled()
+    private InlineIndicatorHelper mInlineIndicatorHelper;
 
     private ColorStateList mDefaultTextColor;
     private ColorStateList mFocusedTextColor;
@@ -83,6 +114,71 @@ public class TextInputLayout extends LinearLayout {
     private boolean mHintAnimationEnabled;
     private ValueAnimatorCompat mAnimator;
 
+    // Only used when the hint is drawn by separate views, see setHintViewEnabled()
+    private HintView mExpandedHintView;
+    private HintView mCollapsedHintView;
+    private boolean mHintViewsCollapsed;
+    private boolean mHintViewsAnimating;
+    // Posted for when the hint views' animations end. Listeners or end actions on the animations
+    // would keep them from running on the RenderThread.
+    private final Runnable mHintViewsAnimationEnd = new Runnable() {
+        @Override
+        public void run() {
+            mHintViewsAnimating = false;
+        }
+    };
+
+    // Installed on the EditText by setEditText(), and removed by detachEditText()
+    private final TextWatcher mTextWatcher = new TextWatcher() {
+        @Override
+        public void afterTextChanged(Editable s) {
+            onEditTextChanged();
+        }
+
+        @Override
+        public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            mLengthCounter.beforeTextChanged(s, start, count, after);
+            if (mValidationPipeline != null) {
+                mValidationPipeline.beforeTextChanged(s, start, count, after);
+            }
+        }
+
+        @Override
+        public void onTextChanged(CharSequence s, int start, int before, int count) {
+            mLengthCounter.onTextChanged(s, start, before, count);
+            if (mValidationPipeline != null) {
+                mValidationPipeline.onTextChanged(s, start, before, count);
+            }
+        }
+    };
+
+    // Whether our hint came from the EditText, so that we can give it back in detachEditText()
+    private boolean mHintTakenFromEditText;
+    // Whether the hint is collapsed, or collapsing, into the label
+    private boolean mHintCollapsed;
+
+    // Whether the text has changed since we last updated for it, see onEditTextChanged()
+    private boolean mTextChangePending;
+    private final Runnable mTextChangedRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flushTextChanged();
+        }
+    };
+
+    private final ViewTreeObserver.OnPreDrawListener mPreDrawListener =
+            new ViewTreeObserver.OnPreDrawListener() {
+                @Override
+                public boolean onPreDraw() {
+                    // Make sure any text change is reflected in what we're about to draw
+                    flushTextChanged();
+                    // Run any hint recalculation which has been deferred since the last frame
+                    mCollapsingTextHelper.recalculateIfNeeded();
+                    updateHintViewContent();
+                    return true;
+                }
+            };
+
     public TextInputLayout(Context context) {
         this(context, null);
     }
@@ -102,7 +198,7 @@ public class TextInputLayout extends LinearLayout {
         mResources = getResources();
 
         mCollapsingTextHelper.setTextSizeInterpolator(AnimationUtils.FAST_OUT_SLOW_IN_INTERPOLATOR);
-        mCollapsingTextHelper.setPositionInterpolator(new AccelerateInterpolator());
+        mCollapsingTextHelper.setPositionInterpolator(AnimationUtils.ACCELERATE_INTERPOLATOR);
         mCollapsingTextHelper.setCollapsedTextGravity(Gravity.TOP | GravityCompat.START);
 
         final TypedArray a = context.obtainStyledAttributes(attrs,
@@ -110,10 +206,18 @@ public class TextInputLayout extends LinearLayout {
         mHint = a.getText(R.styleable.TextInputLayout_hint);
         mHintAnimationEnabled = a.getBoolean(
                 R.styleable.TextInputLayout_hintAnimationEnabled, true);
+        mCollapsingTextHelper.setExpandedMaxLines(
+                a.getInt(R.styleable.TextInputLayout_hintMaxLines, 1));
 
         /*custom*/
         final boolean counterEnabled = a.getBoolean(R.styleable.TextInputLayout_counterEnabled, false);
         mCounterMaxLength = a.getInt(R.styleable.TextInputLayout_counterMaxLength, 0);
+        mCounterTextAppearance = a.getResourceId(
+                R.styleable.TextInputLayout_counterTextAppearance,
+                R.style.TextAppearance_Design_Counter);
+        mCounterOverflowTextAppearance = a.getResourceId(
+                R.styleable.TextInputLayout_counterOverflowTextAppearance,
+                R.style.TextAppearance_Design_Counter_Overflow);
         /*custom*/
 
         if (a.hasValue(R.styleable.TextInputLayout_textColorHint)) {
@@ -133,8 +237,6 @@ public class TextInputLayout extends LinearLayout {
         a.recycle();
 
         /*custom*/
-        mBottomBar = new RelativeLayout(context);
-        addView(mBottomBar);
         setCounterEnabled(counterEnabled);
         /*custom*/
 
@@ -176,14 +278,12 @@ public class TextInputLayout extends LinearLayout {
             throw new IllegalArgumentException("We already have an EditText, can only have one");
         }
         mEditText = editText;
+        mEditTextTinted = false;
 
         // 设置输入文字最大长度限制
-//        InputFilter[] filters = mEditText.getFilters();
-//        if (filters != null && filters.length > 0) {
-//            filters[0] = new InputFilter.LengthFilter(mCounterMaxLength);
-//        } else {
-//            mEditText.setFilters(new InputFilter[]{ new InputFilter.LengthFilter(mCounterMaxLength) });
-//        }
+        if (mMaxLengthFilter != null) {
+            addMaxLengthFilter();
+        }
 
         // Use the EditText's typeface, and it's text size for our expanded text
         mCollapsingTextHelper.setTypeface(mEditText.getTypeface());
@@ -191,21 +291,11 @@ public class TextInputLayout extends LinearLayout {
         mCollapsingTextHelper.setExpandedTextGravity(mEditText.getGravity());
 
         // Add a TextWatcher so that we know when the text input has changed
-        mEditText.addTextChangedListener(new TextWatcher() {
-            @Override
-            public void afterTextChanged(Editable s) {
-                updateLabelVisibility(true);
-                /*custom*/
-                updateCounterText(s);
-                /*custom*/
-            }
-
-            @Override
-            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
-
-            @Override
-            public void onTextChanged(CharSequence s, int start, int before, int count) {}
-        });
+        mLengthCounter.reset(mEditText.getText());
+        if (mValidationPipeline != null) {
+            mValidationPipeline.resetIncrementalValidators(mEditText.getText());
+        }
+        mEditText.addTextChangedListener(mTextWatcher);
 
         // Use the EditText's hint colors if we don't have one set
         if (mDefaultTextColor == null) {
@@ -213,10 +303,12 @@ public class TextInputLayout extends LinearLayout {
         }
 
         // If we do not have a valid hint, try and retrieve it from the EditText
+        mHintTakenFromEditText = false;
         if (TextUtils.isEmpty(mHint)) {
             setHint(mEditText.getHint());
             // Clear the EditText's hint as we will display it ourselves
             mEditText.setHint(null);
+            mHintTakenFromEditText = true;
         }
 
         if (mErrorView != null) {
@@ -231,33 +323,451 @@ public class TextInputLayout extends LinearLayout {
             ViewCompat.setPaddingRelative(mCounterView, ViewCompat.getPaddingStart(mEditText),
                     0, ViewCompat.getPaddingEnd(mEditText), mEditText.getPaddingBottom());
         }
+        updateCounterText();
         /*custom*/
 
+        // Carry over the tint of an error or overflow from before we had this EditText
+        updateEditTextTint();
+
+        updateInlineIndicatorPadding();
+
         // Update the label visibility with no animation
         updateLabelVisibility(false);
     }
 
+    /**
+     * Detach the {@link EditText} from this layout, so that another one can be added. Our text
+     * watcher and maximum length filter are removed from it, it gets back the hint we took from
+     * it if any, and its original background tint if we had tinted it, and it is removed from
+     * this layout.
+     *
+     * @return the EditText which was detached, or null if we didn't have one
+     */
+    @Nullable
+    public EditText detachEditText() {
+        final EditText editText = mEditText;
+        if (editText == null) {
+            return null;
+        }
+
+        // Drop any pending work for the old text
+        mTextChangePending = false;
+        removeCallbacks(mTextChangedRunnable);
+        if (mValidationPipeline != null) {
+            mValidationPipeline.cancel();
+        }
+
+        editText.removeTextChangedListener(mTextWatcher);
+        if (mMaxLengthFilter != null) {
+            removeMaxLengthFilter();
+        }
+        if (mHintTakenFromEditText) {
+            editText.setHint(mHint);
+            setHint(null);
+            mHintTakenFromEditText = false;
+        }
+        if (mEditTextTinted) {
+            restoreEditTextBackgroundTint();
+        }
+
+        mEditText = null;
+        removeView(editText);
+
+        mLengthCounter.reset(null);
+        updateCounterText();
+        updateLabelVisibility(false);
+        return editText;
+    }
+
+    /**
+     * Apply {@code state} to this layout and its {@link EditText}, without any animation. This
+     * is meant for when this layout is reused for a different field, such as in a
+     * {@code RecyclerView}, together with {@link #unbind(FieldState)}.
+     * <p>
+     * The error in the state is shown as it is, rather than the result of validating the text,
+     * and validation only happens again once the text is edited.
+     */
+    public void bind(FieldState state) {
+        // Anything in progress was for the previous field
+        unbind(null);
+
+        setHint(state.hint);
+        setCounterMaxLength(state.counterMaxLength);
+
+        if (mEditText != null) {
+            // We're restoring a state rather than reacting to an edit, so keep our watcher from
+            // animating or validating the restored text, and update straight away instead
+            mEditText.removeTextChangedListener(mTextWatcher);
+            mEditText.setText(state.text);
+            mEditText.addTextChangedListener(mTextWatcher);
+
+            mLengthCounter.reset(mEditText.getText());
+            if (mValidationPipeline != null) {
+                mValidationPipeline.resetIncrementalValidators(mEditText.getText());
+                mValidationPipeline.cancel();
+            }
+            updateCounterText();
+        }
+
+        setError(state.error);
+        skipErrorAnimation();
+
+        if (state.hintCollapsed) {
+            collapseHint(false);
+        } else {
+            expandHint(false);
+        }
+    }
+
+    /**
+     * Stop anything in progress for the current field, jumping any animations to their end,
+     * and save its state into {@code outState}.
+     *
+     * @param outState the state to save into, or null to not save the state
+     * @see #bind(FieldState)
+     */
+    public void unbind(@Nullable FieldState outState) {
+        flushTextChanged();
+        if (mValidationPipeline != null) {
+            mValidationPipeline.cancel();
+        }
+        if (mAnimator != null && mAnimator.isRunning()) {
+            mAnimator.end();
+        }
+        if (mExpandedHintView != null && mHintViewsAnimating) {
+            updateHintViewTransforms(false);
+        }
+        skipErrorAnimation();
+
+        if (outState != null) {
+            saveState(outState);
+        }
+    }
+
+    /**
+     * Save the state of the current field into {@code outState}, so that it can be given to
+     * {@link #bind(FieldState)} later. {@code outState} can be reused across calls.
+     */
+    public void saveState(FieldState outState) {
+        outState.text = mEditText != null ? mEditText.getText().toString() : null;
+        outState.hint = mHint;
+        outState.error = getShownError();
+        outState.counterMaxLength = mCounterMaxLength;
+        outState.hintCollapsed = mHintCollapsed;
+    }
+
+    /**
+     * Returns the error being shown, including while it's still fading in.
+     */
+    private CharSequence getShownError() {
+        if (!mErrorShown) {
+            return null;
+        }
+        return mInlineIndicatorHelper != null
+                ? mInlineIndicatorHelper.getError()
+                : mErrorView.getText();
+    }
+
+    /**
+     * Jumps the error to the end of any fade in or out.
+     */
+    private void skipErrorAnimation() {
+        if (mInlineIndicatorHelper != null) {
+            mInlineIndicatorHelper.skipErrorAnimation();
+        } else if (mErrorView != null) {
+            ViewCompat.animate(mErrorView).cancel();
+            ViewCompat.setAlpha(mErrorView, mErrorShown ? 1f : 0f);
+            mErrorView.setVisibility(mErrorShown ? VISIBLE : INVISIBLE);
+        }
+    }
+
+    /**
+     * Called after every change to the text. Programmatic edits, IME batch edits and autofill
+     * can change the text many times within a frame, so rather than updating for each change,
+     * the update is done once on the next animation frame. It is also done before we are next
+     * drawn, if that comes first. Before Jelly Bean, which has no animation frame callbacks, or
+     * while we're not attached to a window, the update is done straight away.
+     */
+    private void onEditTextChanged() {
+        if (mTextChangePending) {
+            // Already scheduled
+            return;
+        }
+        mTextChangePending = true;
+        if (Build.VERSION.SDK_INT >= 16 && getWindowToken() != null) {
+            ViewCompat.postOnAnimation(this, mTextChangedRunnable);
+        } else {
+            flushTextChanged();
+        }
+    }
+
+    private void flushTextChanged() {
+        if (!mTextChangePending) {
+            return;
+        }
+        mTextChangePending = false;
+        removeCallbacks(mTextChangedRunnable);
+
+        updateLabelVisibility(true);
+        /*custom*/
+        updateCounterText();
+        /*custom*/
+        if (mValidationPipeline != null) {
+            mValidationPipeline.afterTextChanged();
+        }
+    }
+
     /**
      * 更新计数器和底边颜色
+     */
+    private void updateCounterText() {
+        if (mCounterEnabled) {
+            final int currentLength = mLengthCounter.getLength();
+            updateCounter(currentLength);
+        }
+    }
+
+    /**
+     * Moves the counter into the right overflow state for {@code currentLength} before setting
+     * its text, so that the width reserved for the text is measured with the text appearance
+     * it'll be drawn with.
+     */
+    private void updateCounter(int currentLength) {
+        updateCounterOverflow(currentLength > mCounterMaxLength);
+        setCounterText(currentLength);
+    }
+
+    private int getCounterLength() {
+        return mEditText != null ? mLengthCounter.getLength() : 0;
+    }
+
+    /**
+     * Set how the length shown by the counter, and compared against the maximum length, is
+     * counted. The default counts UTF-16 code units, like {@link CharSequence#length()}.
      *
-     * @param text 输入的文字
+     * @param counter the counter to use, or null to use the default. Built-in counters are
+     *                available from {@link LengthCounters}.
+     * @see #getLengthCounter()
      */
-    private void updateCounterText(Editable text) {
-        if (mCounterView != null) {
-            final int currentLength = text.length();
-            mCounterView.setText(mResources.getString(R.string.counterMaxLength,
-                    currentLength, mCounterMaxLength));
-
-            if (currentLength == mCounterMaxLength + 1) {
-                mCounterView.setTextAppearance(getContext(), mErrorTextAppearance);
-                ViewCompat.setBackgroundTintList(mEditText,
-                        ColorStateList.valueOf(mResources.getColor(R.color.design_textinput_error_color)));
-            } else if (currentLength == mCounterMaxLength) {
-                if (!mErrorEnabled) {
-                    ViewCompat.setBackgroundTintList(mEditText, mFocusedTextColor);
-                }
-                mCounterView.setTextAppearance(getContext(), R.style.TextAppearance_Design_Counter);
+    public void setLengthCounter(@Nullable LengthCounter counter) {
+        mLengthCounter = counter != null ? counter : LengthCounters.utf16();
+        if (mEditText != null) {
+            mLengthCounter.reset(mEditText.getText());
+            updateCounterText();
+        }
+    }
+
+    /**
+     * Returns the counter used to count the length of the text.
+     *
+     * @see #setLengthCounter(LengthCounter)
+     */
+    public LengthCounter getLengthCounter() {
+        return mLengthCounter;
+    }
+
+    /**
+     * Set whether the counter's maximum length should be enforced, rather than only shown.
+     * Inserted text is then truncated to what fits, on a boundary of the units counted by the
+     * {@link LengthCounter}, in time proportional to the inserted text only.
+     * <p>
+     * This is done with an {@link InputFilter} added after any filters the {@link EditText}
+     * already has. Calling {@link EditText#setFilters(InputFilter[])} afterwards replaces it,
+     * so set those filters before enforcing the maximum length.
+     *
+     * @see #isCounterMaxLengthEnforced()
+     */
+    public void setCounterMaxLengthEnforced(boolean enforced) {
+        if (enforced == (mMaxLengthFilter != null)) {
+            return;
+        }
+        if (enforced) {
+            mMaxLengthFilter = new MaxLengthFilter();
+            if (mEditText != null) {
+                addMaxLengthFilter();
+            }
+        } else {
+            if (mEditText != null) {
+                removeMaxLengthFilter();
             }
+            mMaxLengthFilter = null;
+        }
+    }
+
+    /**
+     * Returns whether the counter's maximum length is enforced.
+     *
+     * @see #setCounterMaxLengthEnforced(boolean)
+     */
+    public boolean isCounterMaxLengthEnforced() {
+        return mMaxLengthFilter != null;
+    }
+
+    private void addMaxLengthFilter() {
+        final InputFilter[] filters = mEditText.getFilters();
+        final int count = filters != null ? filters.length : 0;
+        final InputFilter[] newFilters = new InputFilter[count + 1];
+        if (count > 0) {
+            System.arraycopy(filters, 0, newFilters, 0, count);
+        }
+        newFilters[count] = mMaxLengthFilter;
+        mEditText.setFilters(newFilters);
+    }
+
+    private void removeMaxLengthFilter() {
+        final InputFilter[] filters = mEditText.getFilters();
+        if (filters == null) {
+            return;
+        }
+        final ArrayList<InputFilter> newFilters = new ArrayList<>(filters.length);
+        for (InputFilter filter : filters) {
+            if (filter != mMaxLengthFilter) {
+                newFilters.add(filter);
+            }
+        }
+        mEditText.setFilters(newFilters.toArray(new InputFilter[newFilters.size()]));
+    }
+
+    /**
+     * Moves the counter between its under and over the limit states. Nothing is done unless the
+     * state actually changes, so this can be called on every edit, and edits which jump across
+     * the limit (such as pastes or deleting a selection) are handled like any other.
+     */
+    private void updateCounterOverflow(boolean overflowed) {
+        if (mCounterOverflowed == overflowed) {
+            return;
+        }
+        mCounterOverflowed = overflowed;
+
+        setCounterTextAppearance(overflowed
+                ? mCounterOverflowTextAppearance
+                : mCounterTextAppearance);
+        updateEditTextTint();
+    }
+
+    /**
+     * Returns the bottom bar, creating it if this is the first time it's needed. Most fields
+     * never show an error or a counter, so they never pay for it.
+     */
+    private RelativeLayout ensureBottomBar() {
+        if (mBottomBar == null) {
+            mBottomBar = new RelativeLayout(getContext());
+            addView(mBottomBar);
+        }
+        return mBottomBar;
+    }
+
+    /**
+     * Tints the EditText's background for the error if one is shown, else for the counter if it
+     * is over the limit, else gives it back its original tint if we had changed it. Every change
+     * to either state goes through here, so that whichever takes precedence always wins.
+     */
+    private void updateEditTextTint() {
+        if (mErrorShown) {
+            setEditTextBackgroundTint(mErrorTintList);
+        } else if (mCounterOverflowed) {
+            if (mCounterOverflowTintList == null) {
+                mCounterOverflowTintList = ColorStateList.valueOf(
+                        mResources.getColor(R.color.design_textinput_error_color));
+            }
+            setEditTextBackgroundTint(mCounterOverflowTintList);
+        } else if (mEditTextTinted) {
+            restoreEditTextBackgroundTint();
+        }
+    }
+
+    private void setEditTextBackgroundTint(ColorStateList tint) {
+        if (mEditText != null) {
+            ViewCompat.setBackgroundTintList(mEditText, tint);
+            mEditTextTinted = true;
+        }
+    }
+
+    private void restoreEditTextBackgroundTint() {
+        // Restore the 'original' tint, using colorControlNormal and colorControlActivated
+        final TintManager tintManager = TintManager.get(getContext());
+        setEditTextBackgroundTint(tintManager.getTintList(R.drawable.abc_edit_text_material));
+        mEditTextTinted = false;
+    }
+
+    /**
+     * Sets the counter text without allocating, by formatting it into a reused char buffer.
+     */
+    private void setCounterText(int currentLength) {
+        if (!mCounterEnabled) {
+            return;
+        }
+        if (mCounterFormatter == null) {
+            mCounterFormatter = new CounterFormatter(
+                    mResources.getString(R.string.counterMaxLength));
+        }
+        final int length = mCounterFormatter.format(currentLength, mCounterMaxLength,
+                mResources.getConfiguration().locale);
+        if (mInlineIndicatorHelper != null) {
+            mInlineIndicatorHelper.setCounterText(mCounterFormatter.getBuffer(), length);
+        } else {
+            updateCounterWidth(currentLength);
+            mCounterView.setText(mCounterFormatter.getBuffer(), 0, length);
+        }
+    }
+
+    /**
+     * Gives the counter a fixed width, wide enough for any text it can show for the current
+     * maximum length, so that setting its text only invalidates it rather than requesting a
+     * layout of the whole hierarchy on each keystroke. Every digit is assumed to be as wide as
+     * the widest one, so proportional digits can't change the width either.
+     * <p>
+     * Room is kept for one more digit than the maximum length has, which covers typing past
+     * the limit. Only longer overflows, or changes to the maximum length, padding or text
+     * appearance, need a new layout.
+     */
+    private void updateCounterWidth(int currentLength) {
+        final TextPaint paint = mCounterView.getPaint();
+        final int maxDigits = CounterFormatter.countDigits(mCounterMaxLength);
+        final int currentDigits = Math.max(CounterFormatter.countDigits(currentLength),
+                maxDigits + 1);
+        final int padding = mCounterView.getPaddingLeft() + mCounterView.getPaddingRight();
+
+        if (mCounterReservedWidth >= 0
+                && currentDigits <= mCounterReservedDigits
+                && mCounterReservedMaxLength == mCounterMaxLength
+                && mCounterReservedPadding == padding
+                && mCounterReservedTextSize == paint.getTextSize()
+                && mCounterReservedTypeface == paint.getTypeface()) {
+            // What we reserved still fits
+            return;
+        }
+
+        mCounterReservedDigits = currentDigits;
+        mCounterReservedMaxLength = mCounterMaxLength;
+        mCounterReservedPadding = padding;
+        mCounterReservedTextSize = paint.getTextSize();
+        mCounterReservedTypeface = paint.getTypeface();
+
+        // Round up, with a pixel to spare for any kerning lost by measuring in pieces
+        final int width = padding + 1 + (int) Math.ceil(mCounterFormatter.measureWidest(paint,
+                currentDigits, maxDigits, mResources.getConfiguration().locale));
+        if (width != mCounterReservedWidth) {
+            mCounterReservedWidth = width;
+            final ViewGroup.LayoutParams lp = mCounterView.getLayoutParams();
+            lp.width = width;
+            mCounterView.setLayoutParams(lp);
+        }
+    }
+
+    private void setCounterTextAppearance(int resId) {
+        if (mInlineIndicatorHelper != null) {
+            mInlineIndicatorHelper.setCounterTextAppearance(resId);
+        } else {
+            ResolvedTextAppearance.get(getContext(), resId).apply(mCounterView);
+        }
+    }
+
+    private void updateInlineIndicatorPadding() {
+        if (mInlineIndicatorHelper != null && mEditText != null) {
+            // Use the same start/end padding as the EditText, as the views would
+            mInlineIndicatorHelper.setPadding(ViewCompat.getPaddingStart(mEditText),
+                    ViewCompat.getPaddingEnd(mEditText), mEditText.getPaddingBottom());
         }
     }
 
@@ -266,12 +776,8 @@ public class TextInputLayout extends LinearLayout {
         // to the EditText so make room for the label
         LayoutParams llp = lp instanceof LayoutParams ? (LayoutParams) lp : new LayoutParams(lp);
 
-        if (mTmpPaint == null) {
-            mTmpPaint = new Paint();
-        }
-        mTmpPaint.setTypeface(mCollapsingTextHelper.getTypeface());
-        mTmpPaint.setTextSize(mCollapsingTextHelper.getCollapsedTextSize());
-        llp.topMargin = (int) -mTmpPaint.ascent();
+        llp.topMargin = (int) -TextMetricsCache.ascent(mCollapsingTextHelper.getTypeface(),
+                mCollapsingTextHelper.getCollapsedTextSize());
 
         return llp;
     }
@@ -328,6 +834,37 @@ public class TextInputLayout extends LinearLayout {
         return mHint;
     }
 
+    /**
+     * Sets the error text color, size, style from the specified TextAppearance resource. The
+     * EditText is tinted with the error's color while an error is shown.
+     *
+     * @attr ref android.support.design.R.styleable#TextInputLayout_errorTextAppearance
+     */
+    public void setErrorTextAppearance(@StyleRes int resId) {
+        mErrorTextAppearance = resId;
+        final int errorColor;
+        if (mInlineIndicatorHelper != null) {
+            mInlineIndicatorHelper.setErrorTextAppearance(resId);
+            errorColor = mInlineIndicatorHelper.getErrorColor();
+        } else if (mErrorView != null) {
+            ResolvedTextAppearance.get(getContext(), resId).apply(mErrorView);
+            errorColor = mErrorView.getCurrentTextColor();
+        } else {
+            // The appearance is applied once the error is enabled
+            return;
+        }
+        if (mErrorShown) {
+            updateErrorTintList(errorColor);
+            updateEditTextTint();
+        }
+    }
+
+    private void updateErrorTintList(int errorColor) {
+        if (mErrorTintList == null || mErrorTintList.getDefaultColor() != errorColor) {
+            mErrorTintList = ColorStateList.valueOf(errorColor);
+        }
+    }
+
     /**
      * Sets the hint text color, size, style from the specified TextAppearance resource.
      *
@@ -360,12 +897,14 @@ public class TextInputLayout extends LinearLayout {
                 ViewCompat.animate(mErrorView).cancel();
             }
 
-            if (enabled) {
+            if (mInlineIndicatorHelper != null) {
+                mInlineIndicatorHelper.setErrorEnabled(enabled);
+            } else if (enabled) {
                 mErrorView = new TextView(getContext());
-                mErrorView.setTextAppearance(getContext(), mErrorTextAppearance);
+                ResolvedTextAppearance.get(getContext(), mErrorTextAppearance).apply(mErrorView);
                 mErrorView.setVisibility(INVISIBLE);
                 /*custom*/
-                mBottomBar.addView(mErrorView);
+                ensureBottomBar().addView(mErrorView);
                 /*custom*/
                 if (mEditText != null) {
                     // Add some start/end padding to the error so that it matches the EditText
@@ -378,6 +917,11 @@ public class TextInputLayout extends LinearLayout {
                 /*custom*/
                 mErrorView = null;
             }
+            if (!enabled && mErrorShown) {
+                // The error is gone, so its tint should be too
+                mErrorShown = false;
+                updateEditTextTint();
+            }
             mErrorEnabled = enabled;
         }
     }
@@ -389,11 +933,9 @@ public class TextInputLayout extends LinearLayout {
      */
     public void setCounterMaxLength(int maxLength) {
         mCounterMaxLength = maxLength;
-        if (mEditText != null) {
-            mCounterView.setText(mResources.getString(R.string.counterMaxLength, mEditText.length(),
-                    maxLength));
-        } else {
-            mCounterView.setText(mResources.getString(R.string.counterMaxLength, 0, maxLength));
+        if (mCounterEnabled) {
+            final int currentLength = getCounterLength();
+            updateCounter(currentLength);
         }
     }
 
@@ -404,34 +946,117 @@ public class TextInputLayout extends LinearLayout {
      */
     public void setCounterEnabled(boolean enabled) {
         if (mCounterEnabled != enabled) {
-            if (enabled) {
+            mCounterEnabled = enabled;
+            if (mInlineIndicatorHelper != null) {
+                mInlineIndicatorHelper.setCounterEnabled(enabled);
+            } else if (enabled) {
                 mCounterView = new TextView(getContext());
-                // mCounterView.setVisibility(VISIBLE);
-                if (mEditText != null && mEditText.length() > mCounterMaxLength) {
-                    mCounterView.setTextAppearance(getContext(), mErrorTextAppearance);
-                } else {
-                    mCounterView.setTextAppearance(getContext(), R.style.TextAppearance_Design_Counter);
-                }
+                // The counter gets a fixed width once its text is set, see updateCounterWidth()
+                mCounterView.setGravity(Gravity.RIGHT);
+                mCounterView.setSingleLine();
+                mCounterReservedWidth = -1;
                 RelativeLayout.LayoutParams params = new RelativeLayout.LayoutParams(
                         RelativeLayout.LayoutParams.WRAP_CONTENT, RelativeLayout.LayoutParams.WRAP_CONTENT);
                 params.addRule(RelativeLayout.ALIGN_PARENT_RIGHT);
                 params.addRule(RelativeLayout.CENTER_VERTICAL);
-                mBottomBar.addView(mCounterView, params);
+                ensureBottomBar().addView(mCounterView, params);
 
                 if (mEditText != null) {
                     // Add some start/end padding to the counter so that it matches the EditText
                     ViewCompat.setPaddingRelative(mCounterView, ViewCompat.getPaddingStart(mEditText),
                             0, ViewCompat.getPaddingEnd(mEditText), mEditText.getPaddingBottom());
                 }
-                mCounterView.setText(mResources.getString(R.string.counterMaxLength, 0, mCounterMaxLength));
             } else {
                 mBottomBar.removeView(mCounterView);
                 mCounterView = null;
             }
-            mCounterEnabled = enabled;
+
+            if (enabled) {
+                final int currentLength = getCounterLength();
+                setCounterTextAppearance(mCounterTextAppearance);
+                mCounterOverflowed = false;
+                updateCounter(currentLength);
+            } else if (mCounterOverflowed) {
+                // There's no counter to be over the limit anymore
+                mCounterOverflowed = false;
+                updateEditTextTint();
+            }
         }
     }
 
+    /**
+     * Set whether the error and counter should be drawn directly by this layout, rather than by
+     * a {@link TextView} each inside an extra {@link RelativeLayout}. This saves up to three
+     * views, and their measure and layout passes, per field. The error still fades in and out,
+     * and is still reported to accessibility services.
+     *
+     * @see #isInlineIndicatorsEnabled()
+     */
+    public void setInlineIndicatorsEnabled(boolean enabled) {
+        if (enabled == (mInlineIndicatorHelper != null)) {
+            return;
+        }
+
+        // Tear down the indicators, and then bring them back in the new mode
+        final boolean errorEnabled = mErrorEnabled;
+        final boolean counterEnabled = mCounterEnabled;
+        final CharSequence error = getError();
+        setErrorEnabled(false);
+        setCounterEnabled(false);
+
+        if (enabled) {
+            mInlineIndicatorHelper = new InlineIndicatorHelper(this);
+            mInlineIndicatorHelper.setErrorTextAppearance(mErrorTextAppearance);
+            updateInlineIndicatorPadding();
+        } else {
+            mInlineIndicatorHelper = null;
+        }
+        if (mBottomBar != null) {
+            // The bottom bar is empty while we draw the indicators, so skip measuring it
+            mBottomBar.setVisibility(enabled ? GONE : VISIBLE);
+        }
+
+        setCounterEnabled(counterEnabled);
+        setErrorEnabled(errorEnabled);
+        if (!TextUtils.isEmpty(error)) {
+            setError(error);
+        }
+
+        requestLayout();
+        invalidate();
+    }
+
+    /**
+     * Returns whether the error and counter are drawn directly by this layout.
+     *
+     * @see #setInlineIndicatorsEnabled(boolean)
+     */
+    public boolean isInlineIndicatorsEnabled() {
+        return mInlineIndicatorHelper != null;
+    }
+
+    /**
+     * Sets the maximum number of lines the hint can wrap onto while it is expanded. A hint which
+     * doesn't fit is ellipsized at the end of the last line. The floating label is always shown
+     * on a single line. The {@link EditText} should be tall enough to show the wrapped hint, for
+     * example by setting its minimum number of lines.
+     *
+     * @attr ref android.support.design.R.styleable#TextInputLayout_hintMaxLines
+     */
+    public void setHintMaxLines(int maxLines) {
+        mCollapsingTextHelper.setExpandedMaxLines(maxLines);
+    }
+
+    /**
+     * Returns the maximum number of lines the hint can wrap onto while it is expanded.
+     *
+     * @attr ref android.support.design.R.styleable#TextInputLayout_hintMaxLines
+     * @see #setHintMaxLines(int)
+     */
+    public int getHintMaxLines() {
+        return mCollapsingTextHelper.getExpandedMaxLines();
+    }
+
     /**
      * Returns whether the error functionality is enabled or not in this layout.
      *
@@ -463,46 +1088,51 @@ public class TextInputLayout extends LinearLayout {
         }
 
         if (!TextUtils.isEmpty(error)) {
-            ViewCompat.setAlpha(mErrorView, 0f);
-            mErrorView.setText(error);
-            ViewCompat.animate(mErrorView)
-                    .alpha(1f)
-                    .setDuration(ANIMATION_DURATION)
-                    .setInterpolator(AnimationUtils.FAST_OUT_SLOW_IN_INTERPOLATOR)
-                    .setListener(new ViewPropertyAnimatorListenerAdapter() {
-                        @Override
-                        public void onAnimationStart(View view) {
-                            view.setVisibility(VISIBLE);
-                        }
-                    })
-                    .start();
-
-            // Set the EditText's background tint to the error color
-            ViewCompat.setBackgroundTintList(mEditText,
-                    ColorStateList.valueOf(mErrorView.getCurrentTextColor()));
-        } else {
-            if (mErrorView.getVisibility() == VISIBLE) {
+            final int errorColor;
+            if (mInlineIndicatorHelper != null) {
+                mInlineIndicatorHelper.showError(error);
+                errorColor = mInlineIndicatorHelper.getErrorColor();
+            } else {
+                ViewCompat.setAlpha(mErrorView, 0f);
+                mErrorView.setText(error);
                 ViewCompat.animate(mErrorView)
-                        .alpha(0f)
+                        .alpha(1f)
                         .setDuration(ANIMATION_DURATION)
                         .setInterpolator(AnimationUtils.FAST_OUT_SLOW_IN_INTERPOLATOR)
                         .setListener(new ViewPropertyAnimatorListenerAdapter() {
                             @Override
-                            public void onAnimationEnd(View view) {
-                                view.setVisibility(INVISIBLE);
+                            public void onAnimationStart(View view) {
+                                view.setVisibility(VISIBLE);
                             }
-                        }).start();
+                        })
+                        .start();
+                errorColor = mErrorView.getCurrentTextColor();
+            }
 
-                /*custom*/
-                if (mEditText.length() > mCounterMaxLength) {
-                    return;
+            // Set the EditText's background tint to the error color
+            updateErrorTintList(errorColor);
+            mErrorShown = true;
+            updateEditTextTint();
+        } else {
+            mErrorShown = false;
+            if (isErrorViewVisible()) {
+                if (mInlineIndicatorHelper != null) {
+                    mInlineIndicatorHelper.hideError();
+                } else {
+                    ViewCompat.animate(mErrorView)
+                            .alpha(0f)
+                            .setDuration(ANIMATION_DURATION)
+                            .setInterpolator(AnimationUtils.FAST_OUT_SLOW_IN_INTERPOLATOR)
+                            .setListener(new ViewPropertyAnimatorListenerAdapter() {
+                                @Override
+                                public void onAnimationEnd(View view) {
+                                    view.setVisibility(INVISIBLE);
+                                }
+                            }).start();
                 }
-                /*custom*/
-                // Restore the 'original' tint, using colorControlNormal and colorControlActivated
-                final TintManager tintManager = TintManager.get(getContext());
-                ViewCompat.setBackgroundTintList(mEditText,
-                        tintManager.getTintList(R.drawable.abc_edit_text_material));
             }
+            // The counter's tint takes over while it is over the limit
+            updateEditTextTint();
         }
 
         sendAccessibilityEvent(AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED);
@@ -517,12 +1147,167 @@ public class TextInputLayout extends LinearLayout {
      */
     @Nullable
     public CharSequence getError() {
-        if (mErrorEnabled && mErrorView != null && mErrorView.getVisibility() == VISIBLE) {
-            return mErrorView.getText();
+        if (mErrorEnabled && isErrorViewVisible()) {
+            return mInlineIndicatorHelper != null
+                    ? mInlineIndicatorHelper.getError()
+                    : mErrorView.getText();
         }
         return null;
     }
 
+    /**
+     * Add a validator to be run whenever the text changes. Validators are run in the order they
+     * were added, off the main thread, and the first error returned is shown with
+     * {@link #setError(CharSequence)}. An error is cleared once all validators pass.
+     * <p>
+     * Validation waits for the text to stop changing for the delay set with
+     * {@link #setValidationDebounce(long)}, and a validation which is still running when the
+     * text changes again is abandoned, so only the result for the latest text is ever shown.
+     * Results are cached by text, see {@link #clearValidationCache(Validator)}.
+     *
+     * @see #removeValidator(Validator)
+     * @see #setValidationExecutor(Executor)
+     */
+    public void addValidator(Validator validator) {
+        getValidationPipeline().addValidator(validator);
+    }
+
+    /**
+     * Remove a validator added with {@link #addValidator(Validator)}.
+     */
+    public void removeValidator(Validator validator) {
+        if (mValidationPipeline != null) {
+            mValidationPipeline.removeValidator(validator);
+        }
+    }
+
+    /**
+     * Add a validator which is kept up to date with each edit of the text, as it happens.
+     * Their errors are only checked once the text has settled, on the main thread, at most
+     * once per frame however many edits were made in it. They are checked before any
+     * {@link Validator}s, which are only run once all of these pass.
+     *
+     * @see CharacterRuleValidator
+     * @see #removeIncrementalValidator(IncrementalValidator)
+     */
+    public void addIncrementalValidator(IncrementalValidator validator) {
+        getValidationPipeline().addIncrementalValidator(validator,
+                mEditText != null ? mEditText.getText() : null);
+    }
+
+    /**
+     * Remove a validator added with {@link #addIncrementalValidator(IncrementalValidator)}.
+     */
+    public void removeIncrementalValidator(IncrementalValidator validator) {
+        if (mValidationPipeline != null) {
+            mValidationPipeline.removeIncrementalValidator(validator);
+        }
+    }
+
+    /**
+     * Remove all validators, and cancel any validation which is pending or running. The error
+     * currently shown is left as it is.
+     */
+    public void clearValidators() {
+        if (mValidationPipeline != null) {
+            mValidationPipeline.clearValidators();
+            mValidationPipeline.cancel();
+        }
+    }
+
+    /**
+     * Set how long the text must stay unchanged before it is validated. Defaults to 0, which
+     * validates after every change.
+     *
+     * @param millis the delay in milliseconds
+     */
+    public void setValidationDebounce(long millis) {
+        getValidationPipeline().setDebounce(millis);
+    }
+
+    /**
+     * Returns how long the text must stay unchanged before it is validated, in milliseconds.
+     */
+    public long getValidationDebounce() {
+        return mValidationPipeline != null ? mValidationPipeline.getDebounce() : 0;
+    }
+
+    /**
+     * Set the executor validators are run on. By default they are run on a background thread
+     * shared by all instances. Results are always delivered on the main thread, directly if the
+     * executor runs them on the main thread, so an executor which runs tasks immediately makes
+     * validation synchronous and deterministic, which is useful for tests.
+     *
+     * @param executor the executor to use, or null to use the default one
+     */
+    public void setValidationExecutor(@Nullable Executor executor) {
+        getValidationPipeline().setExecutor(executor);
+    }
+
+    /**
+     * Forget the results cached for {@code validator}. This should be called whenever something
+     * the validator depends on other than the text changes, such as its configuration, so that
+     * old results aren't reused. Any validation in progress is cancelled. Call
+     * {@link #validate()} afterwards to re-validate the current text.
+     *
+     * @param validator the validator to forget the results of, or null for all of them
+     */
+    public void clearValidationCache(@Nullable Validator validator) {
+        if (mValidationPipeline != null) {
+            mValidationPipeline.clearCache(validator);
+        }
+    }
+
+    /**
+     * Set how many of their most recent results are cached for each validator, by text.
+     * Defaults to 16. Changing this drops all cached results.
+     */
+    public void setValidationCacheSize(int size) {
+        getValidationPipeline().setCacheSize(size);
+    }
+
+    /**
+     * Returns how many results are cached for each validator.
+     */
+    public int getValidationCacheSize() {
+        return getValidationPipeline().getCacheSize();
+    }
+
+    /**
+     * Validate the current text now, without waiting for the debounce delay.
+     */
+    public void validate() {
+        if (mValidationPipeline != null) {
+            mValidationPipeline.validateNow();
+        }
+    }
+
+    private ValidationPipeline getValidationPipeline() {
+        if (mValidationPipeline == null) {
+            mValidationPipeline = new ValidationPipeline(new ValidationPipeline.Host() {
+                @Override
+                public String getText() {
+                    return mEditText != null ? mEditText.getText().toString() : null;
+                }
+
+                @Override
+                public void showError(CharSequence error) {
+                    if (!TextUtils.equals(getError(), error)) {
+                        setError(error);
+                    }
+                }
+            }, new ValidationPipeline.HandlerMainThread());
+        }
+        return mValidationPipeline;
+    }
+
+    private boolean isErrorViewVisible() {
+        if (mInlineIndicatorHelper != null) {
+            return mInlineIndicatorHelper.isErrorVisible();
+        }
+        return mErrorView != null && mErrorView.getVisibility() == VISIBLE;
+    }
+
     /**
      * Returns whether any hint state changes, due to being focused or non-empty text, are
      * animated.
@@ -545,10 +1330,245 @@ public class TextInputLayout extends LinearLayout {
         mHintAnimationEnabled = enabled;
     }
 
+    /**
+     * Set whether the hint animation should be precomputed into a frame table. Each step of the
+     * animation is then sampled once whenever the bounds, hint, text sizes or colors change, and
+     * every frame only interpolates between two sampled steps.
+     *
+     * @see #isHintFrameTableEnabled()
+     */
+    public void setHintFrameTableEnabled(boolean enabled) {
+        mCollapsingTextHelper.setUseFrameTable(enabled);
+    }
+
+    /**
+     * Returns whether the hint animation is precomputed into a frame table.
+     *
+     * @see #setHintFrameTableEnabled(boolean)
+     */
+    public boolean isHintFrameTableEnabled() {
+        return mCollapsingTextHelper.getUseFrameTable();
+    }
+
+    /**
+     * Set whether the hint should be recorded once and replayed on every frame, rather than
+     * being drawn as text on every frame. The recording is only redone when the hint, its text
+     * size, color or typeface changes, which avoids shaping complex scripts or custom typefaces
+     * for each frame. This has no effect on hardware accelerated windows before API 23.
+     *
+     * @see #isHintDisplayListEnabled()
+     */
+    public void setHintDisplayListEnabled(boolean enabled) {
+        mCollapsingTextHelper.setUseDisplayList(enabled);
+    }
+
+    /**
+     * Returns whether the hint is recorded once and replayed on every frame.
+     *
+     * @see #setHintDisplayListEnabled(boolean)
+     */
+    public boolean isHintDisplayListEnabled() {
+        return mCollapsingTextHelper.getUseDisplayList();
+    }
+
+    /**
+     * Returns the number of hint animation frames which were skipped because they would not
+     * have produced a visible change, as the hint would have moved and scaled by less than a
+     * pixel without changing color.
+     */
+    public int getHintSkippedFrameCount() {
+        return mCollapsingTextHelper.getSkippedFrameCount();
+    }
+
+    /**
+     * Returns the number of times an ellipsized hint was found in the process-wide hint cache.
+     *
+     * @see #getHintEllipsizeCacheMissCount()
+     */
+    public static int getHintEllipsizeCacheHitCount() {
+        return EllipsizedTextCache.hitCount();
+    }
+
+    /**
+     * Returns the number of times a hint had to be ellipsized because it was not found in the
+     * process-wide hint cache.
+     *
+     * @see #getHintEllipsizeCacheHitCount()
+     */
+    public static int getHintEllipsizeCacheMissCount() {
+        return EllipsizedTextCache.missCount();
+    }
+
+    /**
+     * Set whether the hint should be drawn by dedicated child views rather than by this layout.
+     * The hint is then only drawn again when it changes, and the collapse/expand animation only
+     * changes the translation, scale and alpha of those views. On API 21+ with hardware
+     * acceleration, such an animation can keep running smoothly while the main thread is busy,
+     * for example while the keyboard is opening.
+     * <p>
+     * In this mode the hint is always drawn on a single line, and the hint color cross-fades
+     * between its expanded and collapsed colors rather than being blended.
+     * <p>
+     * Views can't be translated, scaled or faded before API 11, so this does nothing there.
+     *
+     * @see #isHintViewEnabled()
+     */
+    public void setHintViewEnabled(boolean enabled) {
+        if (Build.VERSION.SDK_INT < 11 || enabled == (mExpandedHintView != null)) {
+            return;
+        }
+
+        if (enabled) {
+            mExpandedHintView = new HintView(getContext());
+            mCollapsedHintView = new HintView(getContext());
+            addView(mExpandedHintView);
+            addView(mCollapsedHintView);
+
+            mHintViewsCollapsed = mCollapsingTextHelper.getExpansionFraction() == 1f;
+            updateHintViewContent();
+            updateHintViewTransforms(false);
+        } else {
+            ViewCompat.animate(mExpandedHintView).cancel();
+            ViewCompat.animate(mCollapsedHintView).cancel();
+            removeView(mExpandedHintView);
+            removeView(mCollapsedHintView);
+            mExpandedHintView = null;
+            mCollapsedHintView = null;
+            removeCallbacks(mHintViewsAnimationEnd);
+            mHintViewsAnimating = false;
+        }
+
+        // Either we, or the hint views, now draw the hint
+        invalidate();
+    }
+
+    /**
+     * Returns whether the hint is drawn by dedicated child views.
+     *
+     * @see #setHintViewEnabled(boolean)
+     */
+    public boolean isHintViewEnabled() {
+        return mExpandedHintView != null;
+    }
+
+    /**
+     * Updates the text, size, origin and colors drawn by the hint views. Each of these only
+     * invalidate the views if they actually changed.
+     */
+    private void updateHintViewContent() {
+        if (mExpandedHintView == null) {
+            return;
+        }
+
+        final CollapsingTextHelper helper = mCollapsingTextHelper;
+        helper.recalculateIfNeeded();
+
+        final CharSequence hint = helper.getText();
+        final Typeface typeface = helper.getTypeface();
+        final float textSize = helper.getExpandedTextSize();
+        final int availableWidth = helper.getExpandedBoundsWidth();
+
+        mExpandedHintView.setText(hint, typeface, textSize, availableWidth);
+        mExpandedHintView.setOrigin(helper.getExpandedDrawX(), helper.getExpandedDrawY());
+        mExpandedHintView.setTextColor(helper.getExpandedTextColor());
+
+        mCollapsedHintView.setText(hint, typeface, textSize, availableWidth);
+        mCollapsedHintView.setOrigin(helper.getExpandedDrawX(), helper.getExpandedDrawY());
+        mCollapsedHintView.setTextColor(helper.getCollapsedTextColor());
+    }
+
+    /**
+     * Moves the hint views to their expanded or collapsed state, depending on
+     * {@link #mHintViewsCollapsed}.
+     */
+    private void updateHintViewTransforms(boolean animate) {
+        final CollapsingTextHelper helper = mCollapsingTextHelper;
+        final float expandedTextSize = helper.getExpandedTextSize();
+
+        final float scale;
+        final float translationX;
+        final float translationY;
+        if (mHintViewsCollapsed && expandedTextSize > 0) {
+            // The views draw the expanded hint, so scale it down around its origin and move
+            // that origin to the collapsed position
+            scale = helper.getCollapsedTextSize() / expandedTextSize;
+            translationX = helper.getCollapsedDrawX() - helper.getExpandedDrawX();
+            translationY = helper.getCollapsedDrawY() - helper.getExpandedDrawY();
+        } else {
+            scale = 1f;
+            translationX = 0f;
+            translationY = 0f;
+        }
+
+        final float expandedAlpha = mHintViewsCollapsed ? 0f : 1f;
+        updateHintViewTransform(mExpandedHintView, translationX, translationY, scale,
+                expandedAlpha, animate);
+        updateHintViewTransform(mCollapsedHintView, translationX, translationY, scale,
+                1f - expandedAlpha, animate);
+
+        removeCallbacks(mHintViewsAnimationEnd);
+        mHintViewsAnimating = animate;
+        if (animate) {
+            postDelayed(mHintViewsAnimationEnd, ANIMATION_DURATION);
+        }
+    }
+
+    private void updateHintViewTransform(HintView view, float translationX, float translationY,
+            float scale, float alpha, boolean animate) {
+        if (animate) {
+            ViewCompat.animate(view)
+                    .translationX(translationX)
+                    .translationY(translationY)
+                    .scaleX(scale)
+                    .scaleY(scale)
+                    .alpha(alpha)
+                    .setDuration(ANIMATION_DURATION)
+                    .setInterpolator(AnimationUtils.FAST_OUT_SLOW_IN_INTERPOLATOR)
+                    .start();
+        } else {
+            ViewCompat.animate(view).cancel();
+            ViewCompat.setTranslationX(view, translationX);
+            ViewCompat.setTranslationY(view, translationY);
+            ViewCompat.setScaleX(view, scale);
+            ViewCompat.setScaleY(view, scale);
+            ViewCompat.setAlpha(view, alpha);
+        }
+    }
+
+    private void setHintViewsCollapsed(boolean collapsed, boolean animate) {
+        updateHintViewContent();
+        if (mHintViewsCollapsed != collapsed) {
+            mHintViewsCollapsed = collapsed;
+            updateHintViewTransforms(animate);
+        }
+    }
+
     @Override
     public void draw(Canvas canvas) {
         super.draw(canvas);
-        mCollapsingTextHelper.draw(canvas);
+        if (mExpandedHintView == null) {
+            mCollapsingTextHelper.draw(canvas);
+        }
+        if (mInlineIndicatorHelper != null) {
+            // The indicators are drawn in the space we added below our children
+            mInlineIndicatorHelper.draw(canvas, getPaddingLeft(),
+                    getHeight() - getPaddingBottom() - mInlineIndicatorHelper.getHeight(),
+                    getWidth() - getPaddingRight());
+        }
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+
+        if (mInlineIndicatorHelper != null) {
+            final int indicatorHeight = mInlineIndicatorHelper.getHeight();
+            if (indicatorHeight > 0) {
+                // Make room for the indicators below our children
+                setMeasuredDimension(getMeasuredWidth(),
+                        resolveSize(getMeasuredHeight() + indicatorHeight, heightMeasureSpec));
+            }
+        }
     }
 
     @Override
@@ -568,8 +1588,40 @@ public class TextInputLayout extends LinearLayout {
             mCollapsingTextHelper.setCollapsedBounds(l, getPaddingTop(),
                     r, bottom - top - getPaddingBottom());
 
-            mCollapsingTextHelper.recalculate();
+            mCollapsingTextHelper.recalculateIfNeeded();
         }
+
+        if (mExpandedHintView != null) {
+            // The hint views cover our whole area, and draw the hint using our coordinates
+            mExpandedHintView.layout(0, 0, right - left, bottom - top);
+            mCollapsedHintView.layout(0, 0, right - left, bottom - top);
+
+            updateHintViewContent();
+            if (!mHintViewsAnimating) {
+                // The offsets might have moved, so move the views to match
+                updateHintViewTransforms(false);
+            }
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        getViewTreeObserver().addOnPreDrawListener(mPreDrawListener);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        getViewTreeObserver().removeOnPreDrawListener(mPreDrawListener);
+        // We won't get a frame callback for any pending change now
+        flushTextChanged();
+        if (mValidationPipeline != null) {
+            // Nobody is going to see the result
+            mValidationPipeline.cancel();
+        }
+        // Let another field use the hint's texture while this one isn't drawn
+        mCollapsingTextHelper.releaseResources();
+        super.onDetachedFromWindow();
     }
 
     @Override
@@ -580,10 +1632,15 @@ public class TextInputLayout extends LinearLayout {
     }
 
     private void collapseHint(boolean animate) {
+        mHintCollapsed = true;
         if (mAnimator != null && mAnimator.isRunning()) {
             mAnimator.cancel();
         }
-        if (animate && mHintAnimationEnabled) {
+        if (mExpandedHintView != null) {
+            // The hint views animate themselves, so just keep our state up to date
+            mCollapsingTextHelper.setExpansionFraction(1f);
+            setHintViewsCollapsed(true, animate && mHintAnimationEnabled);
+        } else if (animate && mHintAnimationEnabled) {
             animateToExpansionFraction(1f);
         } else {
             mCollapsingTextHelper.setExpansionFraction(1f);
@@ -591,10 +1648,15 @@ public class TextInputLayout extends LinearLayout {
     }
 
     private void expandHint(boolean animate) {
+        mHintCollapsed = false;
         if (mAnimator != null && mAnimator.isRunning()) {
             mAnimator.cancel();
         }
-        if (animate && mHintAnimationEnabled) {
+        if (mExpandedHintView != null) {
+            // The hint views animate themselves, so just keep our state up to date
+            mCollapsingTextHelper.setExpansionFraction(0f);
+            setHintViewsCollapsed(false, animate && mHintAnimationEnabled);
+        } else if (animate && mHintAnimationEnabled) {
             animateToExpansionFraction(0f);
         } else {
             mCollapsingTextHelper.setExpansionFraction(0f);
@@ -629,6 +1691,143 @@ public class TextInputLayout extends LinearLayout {
         }
     }
 
+    /**
+     * Counts the length of the text for the counter. It is told about every edit of the text as
+     * it happens, so that it can keep its count up to date by only looking at what changed.
+     *
+     * @see LengthCounters
+     * @see #setLengthCounter(LengthCounter)
+     */
+    public interface LengthCounter {
+
+        /**
+         * Count {@code text} from scratch, discarding the current count.
+         */
+        void reset(CharSequence text);
+
+        /**
+         * Called before {@code count} chars from {@code start} are replaced with {@code after}
+         * new chars, as in {@link TextWatcher#beforeTextChanged(CharSequence, int, int, int)}.
+         */
+        void beforeTextChanged(CharSequence text, int start, int count, int after);
+
+        /**
+         * Called after {@code before} chars from {@code start} have been replaced with
+         * {@code count} new chars, as in
+         * {@link TextWatcher#onTextChanged(CharSequence, int, int, int)}.
+         */
+        void onTextChanged(CharSequence text, int start, int before, int count);
+
+        /**
+         * Returns the current length of the text.
+         */
+        int getLength();
+
+        /**
+         * Returns the length of {@code text} between {@code start} and {@code end}, without
+         * changing the current count.
+         */
+        int measure(CharSequence text, int start, int end);
+
+        /**
+         * Returns the index in {@code text}, between {@code start} and {@code end}, up to which
+         * it can be kept without its length going over {@code maxLength}. This should never
+         * split one of the units being counted, and should only look as far into the text as
+         * it needs to.
+         */
+        int findCutoff(CharSequence text, int start, int end, int maxLength);
+    }
+
+    /**
+     * Checks the text of a {@link TextInputLayout}.
+     *
+     * @see #addValidator(Validator)
+     */
+    public interface Validator {
+
+        /**
+         * Returns the error to show for {@code text}, or null if it is valid. This is called on
+         * the executor set with {@link #setValidationExecutor(Executor)}, which is a background
+         * thread by default.
+         */
+        @Nullable
+        CharSequence validate(String text);
+    }
+
+    /**
+     * Checks the text of a {@link TextInputLayout} by keeping its own summary of the text up to
+     * date with each edit, so that it only needs to look at what changed. Like a
+     * {@link TextWatcher}, it is told about each edit before and after it happens, but
+     * {@link #getError()} is only called once per frame in which the text changed, after all of
+     * that frame's edits.
+     *
+     * @see CharacterRuleValidator
+     * @see #addIncrementalValidator(IncrementalValidator)
+     */
+    public interface IncrementalValidator {
+
+        /**
+         * Rebuild the summary from the whole of {@code text}. This is called when the
+         * validator is added, when the text is replaced without us seeing the edit, and can
+         * also be called by implementations which are given an edit they can't handle.
+         *
+         * @param text the text, or null if there isn't any yet
+         */
+        void reset(@Nullable CharSequence text);
+
+        /**
+         * Called before {@code count} chars from {@code start} are replaced with {@code after}
+         * new chars.
+         */
+        void beforeTextChanged(CharSequence text, int start, int count, int after);
+
+        /**
+         * Called after {@code before} chars from {@code start} have been replaced with
+         * {@code count} new chars.
+         */
+        void onTextChanged(CharSequence text, int start, int before, int count);
+
+        /**
+         * Returns the error to show for the current text, or null if it is valid. This isn't
+         * called after each edit, so it mustn't rely on seeing every intermediate text.
+         */
+        @Nullable
+        CharSequence getError();
+    }
+
+    /**
+     * Truncates inserted text to what is left of the maximum length, as counted by the
+     * current {@link LengthCounter}.
+     */
+    private class MaxLengthFilter implements InputFilter {
+        @Override
+        public CharSequence filter(CharSequence source, int start, int end, Spanned dest,
+                int dstart, int dend) {
+            return LengthCounters.truncateToFit(mLengthCounter, mCounterMaxLength,
+                    source, start, end, dest, dstart, dend);
+        }
+    }
+
+    /**
+     * The state of a field shown by a {@link TextInputLayout}, so that layouts can be reused for
+     * other fields and then given their state back.
+     *
+     * @see #bind(FieldState)
+     * @see #unbind(FieldState)
+     */
+    public static class FieldState {
+        /** The text of the EditText. */
+        public CharSequence text;
+        /** The hint. */
+        public CharSequence hint;
+        /** The error shown, or null if there isn't one. */
+        public CharSequence error;
+        /** The maximum length shown by the counter. */
+        public int counterMaxLength;
+        /** Whether the hint is collapsed into the label above the text. */
+        public boolean hintCollapsed;
+    }
+
     private class TextInputAccessibilityDelegate extends AccessibilityDelegateCompat {
         @Override
         public void onInitializeAccessibilityEvent(View host, AccessibilityEvent event) {
@@ -644,6 +1843,11 @@ public class TextInputLayout extends LinearLayout {
             if (!TextUtils.isEmpty(text)) {
                 event.getText().add(text);
             }
+            // An inline counter has no view of its own for accessibility services to find
+            final CharSequence counter = getInlineCounterText();
+            if (counter != null) {
+                event.getText().add(counter);
+            }
         }
 
         @Override
@@ -652,18 +1856,32 @@ public class TextInputLayout extends LinearLayout {
             info.setClassName(TextInputLayout.class.getSimpleName());
 
             final CharSequence text = mCollapsingTextHelper.getText();
-            if (!TextUtils.isEmpty(text)) {
+            final CharSequence counter = getInlineCounterText();
+            if (counter != null) {
+                info.setText(TextUtils.isEmpty(text)
+                        ? counter
+                        : TextUtils.concat(text, "\n", counter));
+            } else if (!TextUtils.isEmpty(text)) {
                 info.setText(text);
             }
             if (mEditText != null) {
                 info.setLabelFor(mEditText);
             }
-            final CharSequence error = mErrorView != null ? mErrorView.getText() : null;
+            final CharSequence error;
+            if (mInlineIndicatorHelper != null) {
+                error = mInlineIndicatorHelper.getError();
+            } else {
+                error = mErrorView != null ? mErrorView.getText() : null;
+            }
             if (!TextUtils.isEmpty(error)) {
                 info.setContentInvalid(true);
                 info.setError(error);
             }
         }
+
+        private CharSequence getInlineCounterText() {
+            return mInlineIndicatorHelper != null ? mInlineIndicatorHelper.getCounterText() : null;
+        }
     }
 
     private static boolean arrayContains(int[] array, int value) {
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.berial.textinputlayout;
+
+import android.graphics.Typeface;
+import android.support.v4.util.LruCache;
+import android.text.TextPaint;
+import android.text.TextUtils;
+
+/**
+ * Process-wide cache of font metrics keyed by typeface and text size, and of text widths keyed
+ * by text, typeface and text size. Identical fields on a screen share the measurement work.
+ * <p>
+ * This should only be accessed from the main thread.
+ */
+final class TextMetricsCache {
+
+    private static final int MAX_METRICS_SIZE = 16;
+    private static final int MAX_WIDTH_SIZE = 64;
+
+    private static final LruCache<Key, Metrics> METRICS_CACHE = new LruCache<>(MAX_METRICS_SIZE);
+    private static final LruCache<Key, Float> WIDTH_CACHE = new LruCache<>(MAX_WIDTH_SIZE);
+
+    // Reused for lookups so that a cache hit doesn't allocate
+    private static final Key LOOKUP_KEY = new Key();
+
+    private static final TextPaint MEASURE_PAINT = new TextPaint(TextPaint.ANTI_ALIAS_FLAG);
+
+    private static final class Metrics {
+        final float ascent;
+        final float descent;
+
+        Metrics(float ascent, float descent) {
+            this.ascent = ascent;
+            this.descent = descent;
+        }
+    }
+
+    private TextMetricsCache() {
+    }
+
+    /**
+     * Returns the same value as {@link TextPaint#ascent()} for a paint using the given
+     * typeface and text size.
+     */
+    static float ascent(Typeface typeface, float textSize) {
+        return getMetrics(typeface, textSize).ascent;
+    }
+
+    /**
+     * Returns the same value as {@link TextPaint#descent()} for a paint using the given
+     * typeface and text size.
+     */
+    static float descent(Typeface typeface, float textSize) {
+        return getMetrics(typeface, textSize).descent;
+    }
+
+    /**
+     * Returns the same value as {@link TextPaint#measureText(CharSequence, int, int)} for the
+     * whole of {@code text}, using the given typeface and text size.
+     */
+    static float measureText(CharSequence text, Typeface typeface, float textSize) {
+        if (TextUtils.isEmpty(text)) {
+            return 0;
+        }
+
+        LOOKUP_KEY.set(text, typeface, textSize);
+        Float width = WIDTH_CACHE.get(LOOKUP_KEY);
+        LOOKUP_KEY.set(null, null, 0);
+
+        if (width == null) {
+            setupPaint(typeface, textSize);
+            width = MEASURE_PAINT.measureText(text, 0, text.length());
+            WIDTH_CACHE.put(new Key(text.toString(), typeface, textSize), width);
+        }
+        return width;
+    }
+
+    private static Metrics getMetrics(Typeface typeface, float textSize) {
+        LOOKUP_KEY.set(null, typeface, textSize);
+        Metrics metrics = METRICS_CACHE.get(LOOKUP_KEY);
+
+        if (metrics == null) {
+            setupPaint(typeface, textSize);
+            metrics = new Metrics(MEASURE_PAINT.ascent(), MEASURE_PAINT.descent());
+            METRICS_CACHE.put(new Key(null, typeface, textSize), metrics);
+        }
+        return metrics;
+    }
+
+    /**
+     * Returns a hash code of the characters of {@code text}, ignoring any spans, so that equal
+     * text hashes equally whatever its {@link CharSequence} implementation.
+     */
+    static int contentHashCode(CharSequence text) {
+        if (text == null) {
+            return 0;
+        }
+        int result = 0;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            result = 31 * result + text.charAt(i);
+        }
+        return result;
+    }
+
+    private static void setupPaint(Typeface typeface, float textSize) {
+        MEASURE_PAINT.setTypeface(typeface);
+        MEASURE_PAINT.setTextSize(textSize);
+    }
+
+    private static final class Key {
+        private CharSequence mText;
+        private Typeface mTypeface;
+        private float mTextSize;
+
+        Key() {
+        }
+
+        Key(CharSequence text, Typeface typeface, float textSize) {
+            set(text, typeface, textSize);
+        }
+
+        void set(CharSequence text, Typeface typeface, float textSize) {
+            mText = text;
+            mTypeface = typeface;
+            mTextSize = textSize;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return mTextSize == other.mTextSize
+                    && mTypeface == other.mTypeface
+                    && TextUtils.equals(mText, other.mText);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = contentHashCode(mText);
+            result = 31 * result + (mTypeface != null ? mTypeface.hashCode() : 0);
+            result = 31 * result + Float.floatToIntBits(mTextSize);
+            return result;
+        }
+    }
+}
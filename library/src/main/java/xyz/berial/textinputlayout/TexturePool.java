@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.berial.textinputlayout;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayList;
+
+/**
+ * A process-wide pool of {@link Bitmap.Config#ALPHA_8} textures, used by
+ * {@link CollapsingTextHelper} to draw scaled text on devices which can't scale text on a
+ * hardware accelerated canvas.
+ * <p>
+ * Texture sizes are rounded up to a bucket so that textures of similar sizes can be reused,
+ * and released textures are kept until the pool goes over its memory cap, at which point the
+ * least recently released ones are recycled.
+ * <p>
+ * This should only be accessed from the main thread.
+ */
+final class TexturePool {
+
+    private static final int BUCKET_WIDTH = 64;
+    private static final int BUCKET_HEIGHT = 16;
+
+    // ALPHA_8 uses a byte per pixel, so this is the number of pixels we keep around
+    private static final int MAX_POOL_BYTES = 512 * 1024;
+
+    // Ordered from the least to the most recently released
+    private static final ArrayList<Bitmap> POOL = new ArrayList<>();
+    private static int sPoolBytes;
+
+    private TexturePool() {
+    }
+
+    /**
+     * Returns a cleared texture which is at least {@code width} by {@code height} pixels.
+     */
+    static Bitmap acquire(int width, int height) {
+        final int bucketWidth = roundUp(width, BUCKET_WIDTH);
+        final int bucketHeight = roundUp(height, BUCKET_HEIGHT);
+
+        for (int i = POOL.size() - 1; i >= 0; i--) {
+            final Bitmap bitmap = POOL.get(i);
+            if (bitmap.getWidth() == bucketWidth && bitmap.getHeight() == bucketHeight) {
+                POOL.remove(i);
+                sPoolBytes -= getByteCount(bitmap);
+                bitmap.eraseColor(0);
+                return bitmap;
+            }
+        }
+
+        return Bitmap.createBitmap(bucketWidth, bucketHeight, Bitmap.Config.ALPHA_8);
+    }
+
+    /**
+     * Returns {@code bitmap} to the pool so that it can be reused by a later
+     * {@link #acquire(int, int)} call. The bitmap should not be used after this.
+     */
+    static void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+
+        final int byteCount = getByteCount(bitmap);
+        if (byteCount > MAX_POOL_BYTES) {
+            // Never going to fit, so don't evict everything else for it
+            bitmap.recycle();
+            return;
+        }
+
+        POOL.add(bitmap);
+        sPoolBytes += byteCount;
+
+        // Evict the least recently released textures until we're back under the cap
+        while (sPoolBytes > MAX_POOL_BYTES) {
+            final Bitmap evicted = POOL.remove(0);
+            sPoolBytes -= getByteCount(evicted);
+            evicted.recycle();
+        }
+    }
+
+    private static int getByteCount(Bitmap bitmap) {
+        // Bitmap.getByteCount() is only available on API 12+
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    private static int roundUp(int value, int bucket) {
+        return Math.max(1, (value + bucket - 1) / bucket) * bucket;
+    }
+}
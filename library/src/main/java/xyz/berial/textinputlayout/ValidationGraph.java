@@ -0,0 +1,346 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.berial.textinputlayout;
+
+import android.support.annotation.Nullable;
+import android.text.Editable;
+import android.text.TextUtils;
+import android.text.TextWatcher;
+import android.widget.EditText;
+
+import java.util.ArrayList;
+
+/**
+ * Validation rules across the fields of a form, such as "confirm password" or "end date after
+ * start date".
+ * <p>
+ * Each rule declares the fields it reads, and the field its error is shown on. A rule can also
+ * declare that it changes its target in ways other rules depend on, such as its counter's
+ * maximum length. Such a rule comes before the rules which read its target, and they are
+ * evaluated whenever it is. Other rules don't depend on each other, so rules which read each
+ * other's targets, such as a start date rule and an end date rule which both read both dates,
+ * are fine. When a field is edited, only the rules which read it, directly or through other
+ * rules, are evaluated, in that order. The resulting errors are then set in a single pass, once
+ * all of them are known.
+ * <p>
+ * For example:
+ * <pre>
+ * ValidationGraph graph = new ValidationGraph();
+ * graph.addRule(confirmLayout, new ValidationGraph.Rule() {
+ *     public CharSequence evaluate(CharSequence[] inputs, TextInputLayout target) {
+ *         return TextUtils.equals(inputs[0], inputs[1]) ? null : "Passwords don't match";
+ *     }
+ * }, passwordLayout, confirmLayout);
+ * graph.attach();
+ * </pre>
+ * This should only be accessed from the main thread.
+ */
+public final class ValidationGraph {
+
+    /**
+     * A rule of a {@link ValidationGraph}.
+     */
+    public interface Rule {
+
+        /**
+         * Evaluates the rule.
+         *
+         * @param inputs the current text of each of the rule's inputs, in the order they were
+         *               given to {@link #addRule(TextInputLayout, Rule, TextInputLayout...)}
+         *               or {@link #addRule(TextInputLayout, Rule, boolean, TextInputLayout...)}
+         * @param target the field the rule's error is shown on
+         * @return the error to show on {@code target}, or null if the rule passes
+         */
+        @Nullable
+        CharSequence evaluate(CharSequence[] inputs, TextInputLayout target);
+    }
+
+    /**
+     * A rule, with the fields it reads and is shown on. The fields are only compared by
+     * identity, so that the ordering can be worked out for any type of field.
+     */
+    static final class RuleNode<F> {
+        final Rule rule;
+        final F target;
+        final F[] inputs;
+        final boolean changesTarget;
+        final CharSequence[] texts;
+        CharSequence error;
+        // Set while working out which rules an edit affects
+        boolean affected;
+
+        RuleNode(Rule rule, F target, F[] inputs, boolean changesTarget) {
+            this.rule = rule;
+            this.target = target;
+            this.inputs = inputs;
+            this.changesTarget = changesTarget;
+            this.texts = new CharSequence[inputs.length];
+        }
+
+        /**
+         * Returns whether this rule needs to come after {@code other}, which is only the case
+         * if {@code other} changes a target this rule reads. Reading a target doesn't read the
+         * errors set on it, and rules sharing a target don't depend on each other.
+         */
+        boolean dependsOn(RuleNode<F> other) {
+            return other != this && other.changesTarget && other.target != target
+                    && reads(other.target);
+        }
+
+        boolean reads(F field) {
+            for (F input : inputs) {
+                if (input == field) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final ArrayList<RuleNode<TextInputLayout>> mRules = new ArrayList<>();
+    // mRules sorted so that every rule comes after the rules which change the targets it reads
+    private final ArrayList<RuleNode<TextInputLayout>> mOrderedRules = new ArrayList<>();
+    private boolean mOrderValid;
+
+    // The fields we are watching, the EditTexts we added our watchers to, and the watchers, at
+    // the same indices. A field's EditText can be swapped while we're attached, so our watcher
+    // has to be removed from the one it was added to.
+    private final ArrayList<TextInputLayout> mWatchedFields = new ArrayList<>();
+    private final ArrayList<EditText> mWatchedEditTexts = new ArrayList<>();
+    private final ArrayList<TextWatcher> mWatchers = new ArrayList<>();
+
+    // Reused for the targets to update after an edit
+    private final ArrayList<TextInputLayout> mTmpTargets = new ArrayList<>();
+
+    /**
+     * Add a rule which only sets the error of its target.
+     *
+     * @param target the field to show the rule's error on
+     * @param rule   the rule
+     * @param inputs the fields the rule reads. The target is only read if it is one of these.
+     * @throws IllegalStateException if the graph is attached
+     */
+    public void addRule(TextInputLayout target, Rule rule, TextInputLayout... inputs) {
+        addRule(target, rule, false, inputs);
+    }
+
+    /**
+     * Add a rule.
+     *
+     * @param target        the field to show the rule's error on
+     * @param rule          the rule
+     * @param changesTarget whether the rule changes anything about its target other than its
+     *                      error, such as its counter's maximum length. If so, the rule comes
+     *                      before, and causes the evaluation of, the rules which read its
+     *                      target.
+     * @param inputs        the fields the rule reads. The target is only read if it is one of
+     *                      these.
+     * @throws IllegalStateException if the graph is attached
+     */
+    public void addRule(TextInputLayout target, Rule rule, boolean changesTarget,
+            TextInputLayout... inputs) {
+        if (!mWatchedFields.isEmpty()) {
+            throw new IllegalStateException("Rules can't be added while attached");
+        }
+        mRules.add(new RuleNode<>(rule, target, inputs.clone(), changesTarget));
+        mOrderValid = false;
+    }
+
+    /**
+     * Start evaluating the rules whenever one of their inputs changes. All the inputs must
+     * already have their {@link EditText}.
+     *
+     * @throws IllegalStateException if rules which change their targets read each other's
+     *                               targets in a cycle
+     */
+    public void attach() {
+        if (!mWatchedFields.isEmpty()) {
+            return;
+        }
+        ensureOrder();
+
+        for (int i = 0, size = mRules.size(); i < size; i++) {
+            for (final TextInputLayout input : mRules.get(i).inputs) {
+                if (mWatchedFields.contains(input)) {
+                    continue;
+                }
+                final TextWatcher watcher = new TextWatcher() {
+                    @Override
+                    public void beforeTextChanged(CharSequence s, int start, int count,
+                            int after) {}
+
+                    @Override
+                    public void onTextChanged(CharSequence s, int start, int before, int count) {}
+
+                    @Override
+                    public void afterTextChanged(Editable s) {
+                        onFieldChanged(input);
+                    }
+                };
+                final EditText editText = input.getEditText();
+                editText.addTextChangedListener(watcher);
+                mWatchedFields.add(input);
+                mWatchedEditTexts.add(editText);
+                mWatchers.add(watcher);
+            }
+        }
+    }
+
+    /**
+     * Stop evaluating the rules when their inputs change. The errors shown are left as they are.
+     */
+    public void detach() {
+        for (int i = 0, size = mWatchedEditTexts.size(); i < size; i++) {
+            mWatchedEditTexts.get(i).removeTextChangedListener(mWatchers.get(i));
+        }
+        mWatchedFields.clear();
+        mWatchedEditTexts.clear();
+        mWatchers.clear();
+    }
+
+    /**
+     * Evaluate every rule, and set the errors of all their targets.
+     *
+     * @throws IllegalStateException if rules which change their targets read each other's
+     *                               targets in a cycle
+     */
+    public void validateAll() {
+        ensureOrder();
+        for (int i = 0, size = mOrderedRules.size(); i < size; i++) {
+            mOrderedRules.get(i).affected = true;
+        }
+        evaluateAffected();
+    }
+
+    private void onFieldChanged(TextInputLayout field) {
+        markAffected(mOrderedRules, field);
+        evaluateAffected();
+    }
+
+    /**
+     * Marks the rules which need to be evaluated once {@code field} has changed: those which
+     * read it, and those which depend on a rule which does, directly or not.
+     *
+     * @param orderedRules the rules, in the order given by {@link #sortRules(ArrayList, ArrayList)}
+     */
+    static <F> void markAffected(ArrayList<RuleNode<F>> orderedRules, F field) {
+        // Rules are ordered, so by the time we get to a rule we know whether any of the rules
+        // it depends on are affected
+        for (int i = 0, size = orderedRules.size(); i < size; i++) {
+            final RuleNode<F> node = orderedRules.get(i);
+            node.affected = node.reads(field);
+            for (int j = 0; j < i && !node.affected; j++) {
+                final RuleNode<F> other = orderedRules.get(j);
+                node.affected = other.affected && node.dependsOn(other);
+            }
+        }
+    }
+
+    private void evaluateAffected() {
+        final ArrayList<TextInputLayout> targets = mTmpTargets;
+
+        for (int i = 0, size = mOrderedRules.size(); i < size; i++) {
+            final RuleNode<TextInputLayout> node = mOrderedRules.get(i);
+            if (!node.affected) {
+                continue;
+            }
+            for (int j = 0; j < node.inputs.length; j++) {
+                final EditText editText = node.inputs[j].getEditText();
+                node.texts[j] = editText != null ? editText.getText() : null;
+            }
+            node.error = node.rule.evaluate(node.texts, node.target);
+            if (!targets.contains(node.target)) {
+                targets.add(node.target);
+            }
+        }
+
+        // Now that every rule is up to date, set the errors of the targets which may have
+        // changed. The first failing rule of a target, in order, wins.
+        for (int i = 0, size = targets.size(); i < size; i++) {
+            final TextInputLayout target = targets.get(i);
+            final CharSequence error = getError(target);
+            if (!TextUtils.equals(target.getError(), error)) {
+                target.setError(error);
+            }
+        }
+        targets.clear();
+    }
+
+    private CharSequence getError(TextInputLayout target) {
+        for (int i = 0, size = mOrderedRules.size(); i < size; i++) {
+            final RuleNode<TextInputLayout> node = mOrderedRules.get(i);
+            if (node.target == target && node.error != null) {
+                return node.error;
+            }
+        }
+        return null;
+    }
+
+    private void ensureOrder() {
+        if (mOrderValid) {
+            return;
+        }
+        sortRules(mRules, mOrderedRules);
+        mOrderValid = true;
+    }
+
+    /**
+     * Sorts {@code rules} into {@code out} with Kahn's algorithm, so that a rule comes after all
+     * the rules it depends on.
+     *
+     * @throws IllegalStateException if the rules depend on each other in a cycle, in which case
+     *                               {@code out} is left empty
+     */
+    static <F> void sortRules(ArrayList<RuleNode<F>> rules, ArrayList<RuleNode<F>> out) {
+        final int count = rules.size();
+        final int[] inDegree = new int[count];
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < count; j++) {
+                if (rules.get(i).dependsOn(rules.get(j))) {
+                    inDegree[i]++;
+                }
+            }
+        }
+
+        out.clear();
+        final boolean[] done = new boolean[count];
+        for (int head = 0; ; head++) {
+            // Add every rule which doesn't depend on a rule we haven't added yet
+            for (int i = 0; i < count; i++) {
+                if (!done[i] && inDegree[i] == 0) {
+                    done[i] = true;
+                    out.add(rules.get(i));
+                }
+            }
+            if (head >= out.size()) {
+                break;
+            }
+            // Remove the edges from the next rule in order
+            final RuleNode<F> node = out.get(head);
+            for (int i = 0; i < count; i++) {
+                if (!done[i] && rules.get(i).dependsOn(node)) {
+                    inDegree[i]--;
+                }
+            }
+        }
+
+        if (out.size() < count) {
+            out.clear();
+            throw new IllegalStateException("Rules depend on each other in a cycle");
+        }
+    }
+}
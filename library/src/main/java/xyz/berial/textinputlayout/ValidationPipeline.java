@@ -0,0 +1,420 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package xyz.berial.textinputlayout;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+import android.support.v4.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the {@link TextInputLayout.Validator}s of a {@link TextInputLayout} off the main thread,
+ * and keeps its {@link TextInputLayout.IncrementalValidator}s up to date with each edit.
+ * <p>
+ * Each change to the text restarts a debounce delay. Once it passes, the text is snapshotted
+ * and the validators are run on the {@link Executor}. Every run is tagged with a generation
+ * which is bumped by each change, so that runs for text which has since changed stop early and
+ * never deliver their result. The result of the latest run is posted back to the main thread,
+ * and handed to the {@link Host} to show.
+ * <p>
+ * The result of each validator is cached by text, so going back to a recent text (such as by
+ * undoing a typo) shows its result straight away without running the validators again.
+ * <p>
+ * The text, the error and the main thread are reached through {@link Host} and
+ * {@link MainThread}, so that the pipeline itself doesn't need a device to be tested.
+ * <p>
+ * Apart from the validators themselves, this should only be accessed from the main thread.
+ */
+final class ValidationPipeline {
+
+    /**
+     * The field the pipeline validates.
+     */
+    interface Host {
+
+        /**
+         * Returns a snapshot of the text to validate, or null if there is none.
+         */
+        @Nullable
+        String getText();
+
+        /**
+         * Shows {@code error}, or clears the error if it is null. This should do nothing if
+         * the error is already shown, so that an unchanged error isn't animated in again.
+         */
+        void showError(@Nullable CharSequence error);
+    }
+
+    /**
+     * Runs the pipeline's callbacks on the main thread.
+     */
+    interface MainThread {
+
+        boolean isCurrentThread();
+
+        void post(Runnable runnable);
+
+        void postDelayed(Runnable runnable, long delayMillis);
+
+        void removeCallbacks(Runnable runnable);
+    }
+
+    /**
+     * A {@link MainThread} backed by a {@link Handler} on the main looper.
+     */
+    static final class HandlerMainThread implements MainThread {
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public boolean isCurrentThread() {
+            return Looper.myLooper() == Looper.getMainLooper();
+        }
+
+        @Override
+        public void post(Runnable runnable) {
+            mHandler.post(runnable);
+        }
+
+        @Override
+        public void postDelayed(Runnable runnable, long delayMillis) {
+            mHandler.postDelayed(runnable, delayMillis);
+        }
+
+        @Override
+        public void removeCallbacks(Runnable runnable) {
+            mHandler.removeCallbacks(runnable);
+        }
+    }
+
+    private static final int DEFAULT_CACHE_SIZE = 16;
+
+    // Cached for texts which passed a validator, as LruCache can't hold nulls
+    private static final CharSequence NO_ERROR = new String("");
+
+    private static ExecutorService sDefaultExecutor;
+
+    private final Host mHost;
+    private final MainThread mMainThread;
+    private final ArrayList<TextInputLayout.Validator> mValidators = new ArrayList<>();
+    // The results of each validator by text, at the same index as the validator
+    private final ArrayList<LruCache<String, CharSequence>> mResultCaches = new ArrayList<>();
+    private int mCacheSize = DEFAULT_CACHE_SIZE;
+    private final ArrayList<TextInputLayout.IncrementalValidator> mIncrementalValidators =
+            new ArrayList<>();
+
+    private Executor mExecutor;
+    private long mDebounceMillis;
+
+    // Bumped on every change, and read by the runs on the executor to notice they are stale
+    private final AtomicInteger mGeneration = new AtomicInteger();
+
+    // Whether the error shown came from an incremental validator
+    private boolean mShowingIncrementalError;
+
+    private final Runnable mStartRun = new Runnable() {
+        @Override
+        public void run() {
+            start();
+        }
+    };
+
+    ValidationPipeline(Host host, MainThread mainThread) {
+        mHost = host;
+        mMainThread = mainThread;
+    }
+
+    void addValidator(TextInputLayout.Validator validator) {
+        mValidators.add(validator);
+        mResultCaches.add(new LruCache<String, CharSequence>(mCacheSize));
+    }
+
+    void removeValidator(TextInputLayout.Validator validator) {
+        final int index = mValidators.indexOf(validator);
+        if (index >= 0) {
+            mValidators.remove(index);
+            mResultCaches.remove(index);
+        }
+    }
+
+    /**
+     * Forgets the cached results of {@code validator}, or of all validators if it is null. Any
+     * pending or running validation is cancelled, so that it can't show results from before the
+     * clear. The caches are replaced rather than emptied, so that a run which is already past
+     * its last check for being stale can only write into caches nobody reads anymore.
+     */
+    void clearCache(TextInputLayout.Validator validator) {
+        cancel();
+        for (int i = 0, size = mValidators.size(); i < size; i++) {
+            if (validator == null || mValidators.get(i) == validator) {
+                mResultCaches.set(i, new LruCache<String, CharSequence>(mCacheSize));
+            }
+        }
+    }
+
+    /**
+     * Sets how many results are cached for each validator. Existing results are dropped.
+     */
+    void setCacheSize(int size) {
+        mCacheSize = Math.max(1, size);
+        for (int i = 0, count = mResultCaches.size(); i < count; i++) {
+            mResultCaches.set(i, new LruCache<String, CharSequence>(mCacheSize));
+        }
+    }
+
+    int getCacheSize() {
+        return mCacheSize;
+    }
+
+    void addIncrementalValidator(TextInputLayout.IncrementalValidator validator,
+            CharSequence text) {
+        validator.reset(text);
+        mIncrementalValidators.add(validator);
+    }
+
+    void removeIncrementalValidator(TextInputLayout.IncrementalValidator validator) {
+        mIncrementalValidators.remove(validator);
+    }
+
+    void clearValidators() {
+        mValidators.clear();
+        mResultCaches.clear();
+        mIncrementalValidators.clear();
+    }
+
+    /**
+     * Makes the incremental validators rescan {@code text} in full.
+     */
+    void resetIncrementalValidators(CharSequence text) {
+        for (int i = 0, size = mIncrementalValidators.size(); i < size; i++) {
+            mIncrementalValidators.get(i).reset(text);
+        }
+    }
+
+    void beforeTextChanged(CharSequence text, int start, int count, int after) {
+        for (int i = 0, size = mIncrementalValidators.size(); i < size; i++) {
+            mIncrementalValidators.get(i).beforeTextChanged(text, start, count, after);
+        }
+    }
+
+    void onTextChanged(CharSequence text, int start, int before, int count) {
+        for (int i = 0, size = mIncrementalValidators.size(); i < size; i++) {
+            mIncrementalValidators.get(i).onTextChanged(text, start, before, count);
+        }
+    }
+
+    void setExecutor(Executor executor) {
+        mExecutor = executor;
+    }
+
+    void setDebounce(long millis) {
+        mDebounceMillis = Math.max(0, millis);
+    }
+
+    long getDebounce() {
+        return mDebounceMillis;
+    }
+
+    /**
+     * Called once the text has changed, at most once per frame for all of that frame's edits.
+     * Any pending or running validation is cancelled. The incremental validators are checked
+     * straight away, and if they pass, a new run of the other validators is started once the
+     * debounce delay has passed.
+     */
+    void afterTextChanged() {
+        mGeneration.incrementAndGet();
+        mMainThread.removeCallbacks(mStartRun);
+        if (checkIncrementalValidators() || mValidators.isEmpty() || applyCachedResult()) {
+            return;
+        }
+        if (mDebounceMillis > 0) {
+            mMainThread.postDelayed(mStartRun, mDebounceMillis);
+        } else {
+            start();
+        }
+    }
+
+    /**
+     * Validates the current text now, skipping the debounce delay.
+     */
+    void validateNow() {
+        mGeneration.incrementAndGet();
+        mMainThread.removeCallbacks(mStartRun);
+        if (!checkIncrementalValidators() && !applyCachedResult()) {
+            start();
+        }
+    }
+
+    /**
+     * Cancels any pending or running validation, without changing the error.
+     */
+    void cancel() {
+        mGeneration.incrementAndGet();
+        mMainThread.removeCallbacks(mStartRun);
+    }
+
+    /**
+     * Shows the first error from the incremental validators, if any. These are cheap, so they
+     * are checked on the main thread and take precedence over the other validators, which
+     * aren't run while one of these fails.
+     *
+     * @return true if an incremental validator failed
+     */
+    private boolean checkIncrementalValidators() {
+        for (int i = 0, size = mIncrementalValidators.size(); i < size; i++) {
+            final CharSequence error = mIncrementalValidators.get(i).getError();
+            if (error != null) {
+                mShowingIncrementalError = true;
+                apply(error);
+                return true;
+            }
+        }
+        if (mShowingIncrementalError) {
+            // Don't leave an error up which no longer applies while the others run
+            mShowingIncrementalError = false;
+            apply(null);
+        }
+        return false;
+    }
+
+    /**
+     * Shows the result for the current text straight away, without any debounce delay or
+     * validators being run, if every validator needed for it has its result cached.
+     *
+     * @return true if the result was cached
+     */
+    private boolean applyCachedResult() {
+        final String text = mHost.getText();
+        if (text == null) {
+            return false;
+        }
+        for (int i = 0, size = mResultCaches.size(); i < size; i++) {
+            final CharSequence error = mResultCaches.get(i).get(text);
+            if (error == null) {
+                // Not cached, so it needs to be run
+                return false;
+            } else if (error != NO_ERROR) {
+                apply(error);
+                return true;
+            }
+        }
+        apply(null);
+        return true;
+    }
+
+    private void start() {
+        final String text = mHost.getText();
+        if (text == null || mValidators.isEmpty()) {
+            return;
+        }
+
+        final TextInputLayout.Validator[] validators =
+                mValidators.toArray(new TextInputLayout.Validator[mValidators.size()]);
+        @SuppressWarnings("unchecked")
+        final LruCache<String, CharSequence>[] caches =
+                mResultCaches.toArray(new LruCache[mResultCaches.size()]);
+        final int generation = mGeneration.get();
+
+        getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                final CharSequence error =
+                        runValidators(validators, caches, text, mGeneration, generation);
+                if (mGeneration.get() != generation) {
+                    return;
+                }
+                if (mMainThread.isCurrentThread()) {
+                    deliver(error, generation);
+                } else {
+                    mMainThread.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            deliver(error, generation);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the first error from {@code validators}, or null if the text is valid or the run
+     * became stale before finishing, which it does once {@code generations} no longer holds
+     * {@code generation}. Each validator's result is looked up in, or added to, its cache.
+     */
+    static CharSequence runValidators(TextInputLayout.Validator[] validators,
+            LruCache<String, CharSequence>[] caches, String text, AtomicInteger generations,
+            int generation) {
+        for (int i = 0; i < validators.length; i++) {
+            if (generations.get() != generation) {
+                // The text has changed since, so don't bother with the rest
+                return null;
+            }
+            CharSequence error = caches[i].get(text);
+            if (error == null) {
+                error = validators[i].validate(text);
+                if (error == null) {
+                    error = NO_ERROR;
+                }
+                if (generations.get() != generation) {
+                    // Stale, so don't bother caching this either
+                    return null;
+                }
+                caches[i].put(text, error);
+            }
+            if (error != NO_ERROR) {
+                return error;
+            }
+        }
+        return null;
+    }
+
+    private void deliver(CharSequence error, int generation) {
+        if (mGeneration.get() == generation) {
+            apply(error);
+        }
+    }
+
+    private void apply(CharSequence error) {
+        mHost.showError(error);
+    }
+
+    private Executor getExecutor() {
+        if (mExecutor != null) {
+            return mExecutor;
+        }
+        synchronized (ValidationPipeline.class) {
+            if (sDefaultExecutor == null) {
+                sDefaultExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        final Thread thread = new Thread(runnable, "TextInputLayout-validation");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+            return sDefaultExecutor;
+        }
+    }
+}
@@ -19,7 +19,6 @@ package xyz.berial.textinputlayout;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.SystemClock;
-import android.view.animation.AccelerateDecelerateInterpolator;
 import android.view.animation.Interpolator;
 
 /**
@@ -53,7 +52,7 @@ class ValueAnimatorCompatImplEclairMr1 extends ValueAnimatorCompat.Impl {
         }
 
         if (mInterpolator == null) {
-            mInterpolator = new AccelerateDecelerateInterpolator();
+            mInterpolator = AnimationUtils.ACCELERATE_DECELERATE_INTERPOLATOR;
         }
 
         mStartTime = SystemClock.uptimeMillis();
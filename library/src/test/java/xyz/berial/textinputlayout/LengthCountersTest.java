@@ -0,0 +1,255 @@
+package xyz.berial.textinputlayout;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that each of the {@link LengthCounters} keeps the same count, edit by edit, as
+ * counting the whole text again would give, and truncates inserted text without splitting
+ * what it counts.
+ */
+public class LengthCountersTest {
+
+    private static final char HIGH = '\uD83D';
+    private static final char LOW = '\uDE00';
+    private static final String PAIR = "\uD83D\uDE00";
+
+    // Single chars only, so that random edits split pairs and leave surrogates unpaired. The
+    // combining acute accent makes clusters of more than one char.
+    private static final char[] ALPHABET = {
+            'a', 'b', '\u00E9', '\u4E2D', '\u0301', HIGH, LOW,
+    };
+
+    private static final int EDITS = 2000;
+
+    @Test
+    public void utf16_randomEditsMatchRescan() {
+        assertRandomEditsMatchRescan(LengthCounters.utf16());
+    }
+
+    @Test
+    public void codePoints_randomEditsMatchRescan() {
+        assertRandomEditsMatchRescan(LengthCounters.codePoints());
+    }
+
+    @Test
+    public void graphemeClusters_randomEditsMatchRescan() {
+        assertRandomEditsMatchRescan(LengthCounters.graphemeClusters());
+    }
+
+    @Test
+    public void utf8Bytes_randomEditsMatchRescan() {
+        assertRandomEditsMatchRescan(LengthCounters.utf8Bytes());
+    }
+
+    @Test
+    public void codePoints_countsPairsAndUnpairedSurrogates() {
+        final TextInputLayout.LengthCounter counter = LengthCounters.codePoints();
+        final StringBuilder text = new StringBuilder();
+        counter.reset(text);
+
+        replace(counter, text, 0, 0, "a" + HIGH);
+        assertEquals(2, counter.getLength());
+        // Completing the pair leaves the count as it was
+        replace(counter, text, 2, 2, String.valueOf(LOW));
+        assertEquals(2, counter.getLength());
+        // Splitting it makes each half count
+        replace(counter, text, 2, 2, "b");
+        assertEquals(4, counter.getLength());
+        // And removing what split it pairs them up again
+        replace(counter, text, 2, 3, "");
+        assertEquals(2, counter.getLength());
+    }
+
+    @Test
+    public void utf8Bytes_countsPairsAndUnpairedSurrogates() {
+        final TextInputLayout.LengthCounter counter = LengthCounters.utf8Bytes();
+        final StringBuilder text = new StringBuilder();
+        counter.reset(text);
+
+        // An unpaired surrogate is encoded as the 3 byte replacement character
+        replace(counter, text, 0, 0, String.valueOf(HIGH));
+        assertEquals(3, counter.getLength());
+        replace(counter, text, 1, 1, String.valueOf(LOW));
+        assertEquals(4, counter.getLength());
+        replace(counter, text, 0, 1, "");
+        assertEquals(3, counter.getLength());
+        replace(counter, text, 0, 0, "a\u00E9\u4E2D");
+        assertEquals(1 + 2 + 3 + 3, counter.getLength());
+    }
+
+    @Test
+    public void editsNextToPairsAtWindowEdges() {
+        for (TextInputLayout.LengthCounter counter : allCounters()) {
+            final StringBuilder text = new StringBuilder(PAIR + "ab" + PAIR);
+            counter.reset(text);
+
+            // The window of an edit at 2 starts on the first pair's low surrogate, apart from
+            // its high one
+            replace(counter, text, 2, 3, "c");
+            // The window of an edit at 3 ends on the second pair's high surrogate, apart from
+            // its low one
+            replace(counter, text, 3, 4, "");
+            // Replacing a low surrogate leaves its high one unpaired, and putting it back
+            // completes the pair again
+            replace(counter, text, 1, 2, "d");
+            replace(counter, text, 1, 2, String.valueOf(LOW));
+            // Edits at either end of the text, which clip the window. Inserting a high
+            // surrogate in front of an unpaired low one pairs them up.
+            replace(counter, text, 0, 1, "");
+            replace(counter, text, 0, 0, String.valueOf(HIGH));
+            replace(counter, text, text.length() - 1, text.length(), PAIR);
+        }
+    }
+
+    @Test
+    public void editWithoutBeforeTextChanged_countsTextAgain() {
+        for (TextInputLayout.LengthCounter counter : allCounters()) {
+            final StringBuilder text = new StringBuilder("abc");
+            counter.reset(text);
+
+            text.append(PAIR);
+            counter.onTextChanged(text, 3, 0, 2);
+            assertEquals(counter.measure(text, 0, text.length()), counter.getLength());
+        }
+    }
+
+    @Test
+    public void utf16_truncatesToFit() {
+        final TextInputLayout.LengthCounter counter = LengthCounters.utf16();
+
+        // Cut before a pair rather than through it
+        assertEquals("c", truncateToFit(counter, 4, "ab", 2, 2, "c" + PAIR));
+        assertEquals("c" + PAIR, truncateToFit(counter, 5, "ab", 2, 2, "c" + PAIR + "d"));
+        // A combining mark is a unit of its own
+        assertEquals("e", truncateToFit(counter, 3, "ab", 2, 2, "e\u0301f"));
+        // Replacing a selection frees its length for the replacement
+        assertEquals("xy", truncateToFit(counter, 6, "abcdef", 2, 4, "xyz"));
+        assertEquals("x", truncateToFit(counter, 2, "a" + PAIR, 1, 3, "xy"));
+    }
+
+    @Test
+    public void codePoints_truncatesToFit() {
+        final TextInputLayout.LengthCounter counter = LengthCounters.codePoints();
+
+        assertEquals("c", truncateToFit(counter, 3, "ab", 2, 2, "c" + PAIR));
+        assertEquals("c" + PAIR, truncateToFit(counter, 4, "ab", 2, 2, "c" + PAIR + "d"));
+        assertEquals("e", truncateToFit(counter, 3, "ab", 2, 2, "e\u0301f"));
+        assertEquals("xy", truncateToFit(counter, 6, "abcdef", 2, 4, "xyz"));
+        // The selected pair only frees one
+        assertEquals("x", truncateToFit(counter, 2, "a" + PAIR, 1, 3, "xy"));
+    }
+
+    @Test
+    public void graphemeClusters_truncatesToFit() {
+        final TextInputLayout.LengthCounter counter = LengthCounters.graphemeClusters();
+
+        assertEquals("c", truncateToFit(counter, 3, "ab", 2, 2, "c" + PAIR));
+        assertEquals("c" + PAIR, truncateToFit(counter, 4, "ab", 2, 2, "c" + PAIR + "d"));
+        // Keep a combining mark with the char it combines with
+        assertEquals("e\u0301", truncateToFit(counter, 3, "ab", 2, 2, "e\u0301f"));
+        assertEquals("", truncateToFit(counter, 2, "ab", 2, 2, "e\u0301f"));
+        assertEquals("xy", truncateToFit(counter, 6, "abcdef", 2, 4, "xyz"));
+        assertEquals("x", truncateToFit(counter, 2, "ae\u0301", 1, 3, "xy"));
+    }
+
+    @Test
+    public void utf8Bytes_truncatesToFit() {
+        final TextInputLayout.LengthCounter counter = LengthCounters.utf8Bytes();
+
+        // Keep all 4 bytes of a pair or none of them
+        assertEquals("c", truncateToFit(counter, 6, "ab", 2, 2, "c" + PAIR));
+        assertEquals("c" + PAIR, truncateToFit(counter, 7, "ab", 2, 2, "c" + PAIR + "d"));
+        assertEquals("e", truncateToFit(counter, 4, "ab", 2, 2, "e\u0301f"));
+        assertEquals("e\u0301", truncateToFit(counter, 5, "ab", 2, 2, "e\u0301f"));
+        // The selected 2 byte char makes room for 2 single byte ones
+        assertEquals("xy", truncateToFit(counter, 4, "a\u00E9b", 1, 2, "xyz"));
+        assertEquals("xyz", truncateToFit(counter, 4, "a" + PAIR, 1, 3, "xyzw"));
+    }
+
+    @Test
+    public void truncateToFit_onlyFiltersWhatIsInserted() {
+        for (TextInputLayout.LengthCounter counter : allCounters()) {
+            // Deletions are left alone, even while over the limit
+            assertNull(truncateToFit(counter, 2, "abcd", 1, 3, ""));
+            // As are inserts which fit
+            assertNull(truncateToFit(counter, 4, "ab", 1, 1, "cd"));
+            // While nothing can be inserted once at the limit
+            assertEquals("", truncateToFit(counter, 2, "ab", 1, 1, "c"));
+            assertEquals("", truncateToFit(counter, 2, "abc", 1, 1, "c"));
+        }
+    }
+
+    /**
+     * Returns what {@link LengthCounters#truncateToFit} keeps of {@code source}, inserted into
+     * {@code dest} in place of {@code dstart} to {@code dend}, or null if it keeps it all.
+     * Only part of the source is offered, as filters can be.
+     */
+    private static String truncateToFit(TextInputLayout.LengthCounter counter, int maxLength,
+            String dest, int dstart, int dend, String source) {
+        counter.reset(dest);
+        final String padded = "<" + source + ">";
+        final CharSequence kept = LengthCounters.truncateToFit(counter, maxLength,
+                padded, 1, padded.length() - 1, dest, dstart, dend);
+        return kept != null ? kept.toString() : null;
+    }
+
+    private static TextInputLayout.LengthCounter[] allCounters() {
+        return new TextInputLayout.LengthCounter[] {
+                LengthCounters.utf16(),
+                LengthCounters.codePoints(),
+                LengthCounters.graphemeClusters(),
+                LengthCounters.utf8Bytes(),
+        };
+    }
+
+    private static void assertRandomEditsMatchRescan(TextInputLayout.LengthCounter counter) {
+        // Seeded, so that a failure can be reproduced
+        final Random random = new Random(42);
+        final StringBuilder text = new StringBuilder();
+        counter.reset(text);
+
+        for (int i = 0; i < EDITS; i++) {
+            final int start = random.nextInt(text.length() + 1);
+            // Keep the text short enough that edits often land near each other
+            final int end = start + random.nextInt(Math.min(text.length() - start, 8) + 1);
+            final int inserted = text.length() > 200 ? 0 : random.nextInt(8);
+            final StringBuilder insert = new StringBuilder();
+            for (int j = 0; j < inserted; j++) {
+                insert.append(ALPHABET[random.nextInt(ALPHABET.length)]);
+            }
+            replace(counter, text, start, end, insert.toString());
+        }
+    }
+
+    /**
+     * Replaces {@code start} to {@code end} of {@code text} with {@code with}, telling
+     * {@code counter} about it as a {@link android.text.TextWatcher} would be, then checks its
+     * count against counting all of the text again.
+     */
+    private static void replace(TextInputLayout.LengthCounter counter, StringBuilder text,
+            int start, int end, String with) {
+        counter.beforeTextChanged(text, start, end - start, with.length());
+        text.replace(start, end, with);
+        counter.onTextChanged(text, start, end - start, with.length());
+
+        assertEquals("After replacing " + start + "-" + end + " of \"" + escape(text) + "\"",
+                counter.measure(text, 0, text.length()), counter.getLength());
+    }
+
+    private static String escape(CharSequence text) {
+        final StringBuilder escaped = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (c < 0x80) {
+                escaped.append(c);
+            } else {
+                escaped.append(String.format("\\u%04X", (int) c));
+            }
+        }
+        return escaped.toString();
+    }
+}
@@ -0,0 +1,106 @@
+package xyz.berial.textinputlayout;
+
+import android.view.animation.Interpolator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks {@link AnimationUtils.LookupTableInterpolator} against exact versions of the curves
+ * the library samples. The platform interpolators are stubs on the JVM, so their curves are
+ * computed here instead.
+ */
+public class LookupTableInterpolatorTest {
+
+    // Far more samples than the table has, including points between its steps
+    private static final int SAMPLES = 10000;
+
+    private static final Interpolator DECELERATE = new Interpolator() {
+        @Override
+        public float getInterpolation(float input) {
+            return (float) (1.0 - (1.0 - input) * (1.0 - input));
+        }
+    };
+
+    private static final Interpolator ACCELERATE = new Interpolator() {
+        @Override
+        public float getInterpolation(float input) {
+            return input * input;
+        }
+    };
+
+    private static final Interpolator ACCELERATE_DECELERATE = new Interpolator() {
+        @Override
+        public float getInterpolation(float input) {
+            return (float) (Math.cos((input + 1) * Math.PI) / 2.0) + 0.5f;
+        }
+    };
+
+    // The cubic bezier from (0, 0) to (1, 1) with control points (0.4, 0) and (0.2, 1)
+    private static final Interpolator FAST_OUT_SLOW_IN = new Interpolator() {
+        @Override
+        public float getInterpolation(float input) {
+            // Find the bezier's t for x = input by bisection, as x(t) is monotonic
+            double low = 0;
+            double high = 1;
+            for (int i = 0; i < 64; i++) {
+                final double t = (low + high) / 2;
+                if (bezier(t, 0.4, 0.2) < input) {
+                    low = t;
+                } else {
+                    high = t;
+                }
+            }
+            return (float) bezier((low + high) / 2, 0, 1);
+        }
+
+        private double bezier(double t, double p1, double p2) {
+            final double u = 1 - t;
+            return 3 * u * u * t * p1 + 3 * u * t * t * p2 + t * t * t;
+        }
+    };
+
+    @Test
+    public void fastOutSlowIn_isWithinMaxError() {
+        assertWithinMaxError(FAST_OUT_SLOW_IN);
+    }
+
+    @Test
+    public void decelerate_isWithinMaxError() {
+        assertWithinMaxError(DECELERATE);
+    }
+
+    @Test
+    public void accelerate_isWithinMaxError() {
+        assertWithinMaxError(ACCELERATE);
+    }
+
+    @Test
+    public void accelerateDecelerate_isWithinMaxError() {
+        assertWithinMaxError(ACCELERATE_DECELERATE);
+    }
+
+    @Test
+    public void endpoints_areExact() {
+        final Interpolator table = new AnimationUtils.LookupTableInterpolator(FAST_OUT_SLOW_IN);
+        assertEquals(FAST_OUT_SLOW_IN.getInterpolation(0f), table.getInterpolation(0f), 0f);
+        assertEquals(FAST_OUT_SLOW_IN.getInterpolation(1f), table.getInterpolation(1f), 0f);
+    }
+
+    @Test
+    public void inputsOutsideRange_areClamped() {
+        final Interpolator table = new AnimationUtils.LookupTableInterpolator(ACCELERATE);
+        assertEquals(table.getInterpolation(0f), table.getInterpolation(-0.5f), 0f);
+        assertEquals(table.getInterpolation(1f), table.getInterpolation(1.5f), 0f);
+    }
+
+    private static void assertWithinMaxError(Interpolator reference) {
+        final Interpolator table = new AnimationUtils.LookupTableInterpolator(reference);
+        for (int i = 0; i <= SAMPLES; i++) {
+            final float input = i / (float) SAMPLES;
+            assertEquals("At " + input, reference.getInterpolation(input),
+                    table.getInterpolation(input), AnimationUtils.LOOKUP_TABLE_MAX_ERROR);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package xyz.berial.textinputlayout;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the ordering and change propagation of {@link ValidationGraph}'s rules, using strings
+ * as fields.
+ */
+public class ValidationGraphTest {
+
+    private final ArrayList<ValidationGraph.RuleNode<String>> mRules = new ArrayList<>();
+    private final ArrayList<ValidationGraph.RuleNode<String>> mOrdered = new ArrayList<>();
+
+    @Test
+    public void sortRules_symmetricRulesAreNotACycle() {
+        // A start date and an end date rule, each reading both dates
+        final ValidationGraph.RuleNode<String> start = add("start", false, "start", "end");
+        final ValidationGraph.RuleNode<String> end = add("end", false, "start", "end");
+
+        ValidationGraph.sortRules(mRules, mOrdered);
+        assertEquals(2, mOrdered.size());
+        assertSame(start, mOrdered.get(0));
+        assertSame(end, mOrdered.get(1));
+    }
+
+    @Test
+    public void sortRules_readerComesAfterRuleChangingItsInput() {
+        final ValidationGraph.RuleNode<String> reader = add("c", false, "b");
+        final ValidationGraph.RuleNode<String> changer = add("b", true, "a");
+
+        ValidationGraph.sortRules(mRules, mOrdered);
+        assertSame(changer, mOrdered.get(0));
+        assertSame(reader, mOrdered.get(1));
+    }
+
+    @Test
+    public void sortRules_ruleReadingItsOwnTargetIsNotACycle() {
+        add("a", true, "a");
+
+        ValidationGraph.sortRules(mRules, mOrdered);
+        assertEquals(1, mOrdered.size());
+    }
+
+    @Test
+    public void sortRules_changingRulesReadingEachOthersTargetsAreACycle() {
+        add("a", true, "b");
+        add("b", true, "a");
+
+        try {
+            ValidationGraph.sortRules(mRules, mOrdered);
+            fail("Expected a cycle");
+        } catch (IllegalStateException expected) {
+        }
+        assertTrue(mOrdered.isEmpty());
+    }
+
+    @Test
+    public void markAffected_followsRulesWhichChangeTheirTarget() {
+        final ValidationGraph.RuleNode<String> changer = add("b", true, "a");
+        final ValidationGraph.RuleNode<String> reader = add("c", false, "b");
+        final ValidationGraph.RuleNode<String> other = add("d", false, "x");
+        ValidationGraph.sortRules(mRules, mOrdered);
+
+        ValidationGraph.markAffected(mOrdered, "a");
+        assertTrue(changer.affected);
+        assertTrue(reader.affected);
+        assertFalse(other.affected);
+
+        ValidationGraph.markAffected(mOrdered, "b");
+        assertFalse(changer.affected);
+        assertTrue(reader.affected);
+        assertFalse(other.affected);
+
+        ValidationGraph.markAffected(mOrdered, "x");
+        assertFalse(changer.affected);
+        assertFalse(reader.affected);
+        assertTrue(other.affected);
+    }
+
+    @Test
+    public void markAffected_doesNotFollowRulesWhichOnlySetErrors() {
+        final ValidationGraph.RuleNode<String> first = add("b", false, "a");
+        final ValidationGraph.RuleNode<String> second = add("c", false, "b");
+        ValidationGraph.sortRules(mRules, mOrdered);
+
+        ValidationGraph.markAffected(mOrdered, "a");
+        assertTrue(first.affected);
+        assertFalse(second.affected);
+    }
+
+    @Test
+    public void markAffected_followsChainsOfChangingRules() {
+        // Added in reverse so that the sort has to reorder them
+        final ValidationGraph.RuleNode<String> third = add("d", false, "c");
+        final ValidationGraph.RuleNode<String> second = add("c", true, "b");
+        final ValidationGraph.RuleNode<String> first = add("b", true, "a");
+        ValidationGraph.sortRules(mRules, mOrdered);
+        assertSame(first, mOrdered.get(0));
+        assertSame(second, mOrdered.get(1));
+        assertSame(third, mOrdered.get(2));
+
+        ValidationGraph.markAffected(mOrdered, "a");
+        assertTrue(first.affected);
+        assertTrue(second.affected);
+        assertTrue(third.affected);
+    }
+
+    private ValidationGraph.RuleNode<String> add(String target, boolean changesTarget,
+            String... inputs) {
+        final ValidationGraph.RuleNode<String> node =
+                new ValidationGraph.RuleNode<>(null, target, inputs, changesTarget);
+        mRules.add(node);
+        return node;
+    }
+}
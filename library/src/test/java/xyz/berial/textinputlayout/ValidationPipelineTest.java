@@ -0,0 +1,311 @@
+package xyz.berial.textinputlayout;
+
+import android.support.v4.util.LruCache;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ValidationPipelineTest {
+
+    private CountingValidator mNotEmpty;
+    private CountingValidator mNoSpaces;
+    private TextInputLayout.Validator[] mValidators;
+    private LruCache<String, CharSequence>[] mCaches;
+    private AtomicInteger mGenerations;
+
+    private FakeHost mHost;
+    private FakeMainThread mMainThread;
+    private QueueExecutor mExecutor;
+    private ValidationPipeline mPipeline;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        mNotEmpty = new CountingValidator("", "Empty");
+        mNoSpaces = new CountingValidator(" ", "Spaces");
+        mValidators = new TextInputLayout.Validator[] { mNotEmpty, mNoSpaces };
+        mCaches = new LruCache[] {
+                new LruCache<String, CharSequence>(4), new LruCache<String, CharSequence>(4) };
+        mGenerations = new AtomicInteger();
+
+        mHost = new FakeHost();
+        mMainThread = new FakeMainThread();
+        mExecutor = new QueueExecutor(mMainThread);
+        mPipeline = new ValidationPipeline(mHost, mMainThread);
+        mPipeline.setExecutor(mExecutor);
+        mPipeline.addValidator(mNotEmpty);
+        mPipeline.addValidator(mNoSpaces);
+    }
+
+    @Test
+    public void runValidators_runsLaterValidatorsWhenEarlierOnesPass() {
+        assertEquals("Spaces", run("a b"));
+        assertEquals(1, mNotEmpty.mCalls);
+        assertEquals(1, mNoSpaces.mCalls);
+    }
+
+    @Test
+    public void runValidators_stopsAtFirstError() {
+        assertEquals("Empty", run(""));
+        assertEquals(0, mNoSpaces.mCalls);
+    }
+
+    @Test
+    public void runValidators_returnsNullWhenAllPass() {
+        assertNull(run("ab"));
+        assertEquals(1, mNotEmpty.mCalls);
+        assertEquals(1, mNoSpaces.mCalls);
+    }
+
+    @Test
+    public void runValidators_reusesCachedResults() {
+        run("ab");
+        run("a b");
+        assertNull(run("ab"));
+        assertEquals("Spaces", run("a b"));
+        assertEquals(2, mNotEmpty.mCalls);
+        assertEquals(2, mNoSpaces.mCalls);
+    }
+
+    @Test
+    public void runValidators_doesNotCacheStaleResults() {
+        final TextInputLayout.Validator clearing = new TextInputLayout.Validator() {
+            @Override
+            public CharSequence validate(String text) {
+                // As if the cache were cleared while this was running
+                mGenerations.incrementAndGet();
+                return null;
+            }
+        };
+        mValidators[0] = clearing;
+
+        assertNull(run("a b"));
+        assertNull(mCaches[0].get("a b"));
+        assertEquals(0, mNoSpaces.mCalls);
+    }
+
+    @Test
+    public void afterTextChanged_runsOnceDebounceHasPassed() {
+        mPipeline.setDebounce(300);
+
+        edit("a");
+        mMainThread.advance(200);
+        edit("a b");
+        mMainThread.advance(299);
+        assertEquals(0, mExecutor.size());
+
+        mMainThread.advance(1);
+        assertEquals(1, mExecutor.size());
+        mExecutor.runAll();
+        mMainThread.advance(0);
+        assertEquals(1, mNoSpaces.mCalls);
+        assertEquals(Arrays.<CharSequence>asList("Spaces"), mHost.mShownErrors);
+    }
+
+    @Test
+    public void cancel_dropsPendingRun() {
+        mPipeline.setDebounce(300);
+
+        edit("a b");
+        mPipeline.cancel();
+        mMainThread.advance(1000);
+        assertEquals(0, mExecutor.size());
+        assertTrue(mHost.mShownErrors.isEmpty());
+    }
+
+    @Test
+    public void staleRun_stopsWithoutRunningValidators() {
+        edit("a b");
+        edit("ab");
+        assertEquals(2, mExecutor.size());
+
+        mExecutor.runAll();
+        mMainThread.advance(0);
+        // Only the run for the latest text got to the validators
+        assertEquals(1, mNotEmpty.mCalls);
+        assertEquals(1, mNoSpaces.mCalls);
+        assertEquals(Arrays.<CharSequence>asList((CharSequence) null), mHost.mShownErrors);
+    }
+
+    @Test
+    public void staleResult_isNotDelivered() {
+        edit("a b");
+        mExecutor.runAll();
+        // The result has been posted, but the text changes before it is delivered
+        edit("ab");
+        mMainThread.advance(0);
+        assertTrue(mHost.mShownErrors.isEmpty());
+
+        mExecutor.runAll();
+        mMainThread.advance(0);
+        assertEquals(Arrays.<CharSequence>asList((CharSequence) null), mHost.mShownErrors);
+    }
+
+    @Test
+    public void cachedResult_isShownWithoutRunning() {
+        edit("a b");
+        mExecutor.runAll();
+        mMainThread.advance(0);
+        edit("ab");
+        mExecutor.runAll();
+        mMainThread.advance(0);
+
+        edit("a b");
+        assertEquals(0, mExecutor.size());
+        assertEquals(Arrays.<CharSequence>asList("Spaces", null, "Spaces"), mHost.mShownErrors);
+    }
+
+    @Test
+    public void clearCache_runsValidatorsAgain() {
+        edit("a b");
+        mExecutor.runAll();
+        mMainThread.advance(0);
+
+        mPipeline.clearCache(null);
+        edit("a b");
+        assertEquals(1, mExecutor.size());
+        mExecutor.runAll();
+        assertEquals(2, mNotEmpty.mCalls);
+        assertEquals(2, mNoSpaces.mCalls);
+    }
+
+    @Test
+    public void clearCache_dropsRunInFlight() {
+        edit("a b");
+        mPipeline.clearCache(null);
+        mExecutor.runAll();
+        mMainThread.advance(0);
+        assertEquals(0, mNotEmpty.mCalls);
+        assertTrue(mHost.mShownErrors.isEmpty());
+    }
+
+    private void edit(String text) {
+        mHost.mText = text;
+        mPipeline.afterTextChanged();
+    }
+
+    private CharSequence run(String text) {
+        return ValidationPipeline.runValidators(mValidators, mCaches, text, mGenerations,
+                mGenerations.get());
+    }
+
+    private static class FakeHost implements ValidationPipeline.Host {
+        String mText;
+        final ArrayList<CharSequence> mShownErrors = new ArrayList<>();
+
+        @Override
+        public String getText() {
+            return mText;
+        }
+
+        @Override
+        public void showError(CharSequence error) {
+            mShownErrors.add(error);
+        }
+    }
+
+    /**
+     * Runs posted runnables once the test advances its clock past their time.
+     */
+    private static class FakeMainThread implements ValidationPipeline.MainThread {
+        private final ArrayList<Runnable> mRunnables = new ArrayList<>();
+        private final ArrayList<Long> mTimes = new ArrayList<>();
+        private long mNow;
+        boolean mOnMainThread = true;
+
+        @Override
+        public boolean isCurrentThread() {
+            return mOnMainThread;
+        }
+
+        @Override
+        public void post(Runnable runnable) {
+            postDelayed(runnable, 0);
+        }
+
+        @Override
+        public void postDelayed(Runnable runnable, long delayMillis) {
+            mRunnables.add(runnable);
+            mTimes.add(mNow + delayMillis);
+        }
+
+        @Override
+        public void removeCallbacks(Runnable runnable) {
+            for (int i = mRunnables.size() - 1; i >= 0; i--) {
+                if (mRunnables.get(i) == runnable) {
+                    mRunnables.remove(i);
+                    mTimes.remove(i);
+                }
+            }
+        }
+
+        void advance(long millis) {
+            mNow += millis;
+            for (int i = 0; i < mRunnables.size(); ) {
+                if (mTimes.get(i) <= mNow) {
+                    mTimes.remove(i);
+                    mRunnables.remove(i).run();
+                } else {
+                    i++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Queues runs until the test runs them, as if on a background thread.
+     */
+    private static class QueueExecutor implements Executor {
+        private final ArrayList<Runnable> mQueue = new ArrayList<>();
+        private final FakeMainThread mMainThread;
+
+        QueueExecutor(FakeMainThread mainThread) {
+            mMainThread = mainThread;
+        }
+
+        @Override
+        public void execute(Runnable runnable) {
+            mQueue.add(runnable);
+        }
+
+        int size() {
+            return mQueue.size();
+        }
+
+        void runAll() {
+            mMainThread.mOnMainThread = false;
+            while (!mQueue.isEmpty()) {
+                mQueue.remove(0).run();
+            }
+            mMainThread.mOnMainThread = true;
+        }
+    }
+
+    /**
+     * Fails texts which are, or contain, a given string, and counts how often it is run.
+     */
+    private static class CountingValidator implements TextInputLayout.Validator {
+        private final String mInvalid;
+        private final String mError;
+        int mCalls;
+
+        CountingValidator(String invalid, String error) {
+            mInvalid = invalid;
+            mError = error;
+        }
+
+        @Override
+        public CharSequence validate(String text) {
+            mCalls++;
+            final boolean invalid = mInvalid.isEmpty() ? text.isEmpty() : text.contains(mInvalid);
+            return invalid ? mError : null;
+        }
+    }
+}